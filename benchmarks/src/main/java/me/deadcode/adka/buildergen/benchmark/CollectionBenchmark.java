@@ -0,0 +1,99 @@
+package me.deadcode.adka.buildergen.benchmark;
+
+import me.deadcode.adka.buildergen.benchmark.model.CollectionEntity;
+import me.deadcode.adka.buildergen.benchmark.model.CollectionEntityBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling the collections and arrays of an entity by the generated builders, element by element and all at once,
+ * compared to filling a collection directly.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CollectionBenchmark {
+
+    @Param({"10", "1000"})
+    private int size;
+
+    private String[] items;
+    private List<String> itemList;
+    private int[] samples;
+
+    @Setup
+    public void setUp() {
+        items = new String[size];
+        samples = new int[size];
+        for (int i = 0; i < size; i++) {
+            items[i] = "item" + i;
+            samples[i] = i;
+        }
+        itemList = Arrays.asList(items);
+    }
+
+    @Benchmark
+    public CollectionEntity addDirectly() {
+        List<String> list = new ArrayList<>();
+        for (String item : items) {
+            list.add(item);
+        }
+        CollectionEntity entity = new CollectionEntity();
+        entity.setItems(list);
+        return entity;
+    }
+
+    @Benchmark
+    public CollectionEntity addTo() {
+        CollectionEntityBuilder builder = new CollectionEntityBuilder();
+        for (String item : items) {
+            builder.addToItems(item);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public CollectionEntity addAllTo() {
+        return new CollectionEntityBuilder().addAllToItems(itemList).build();
+    }
+
+    @Benchmark
+    public CollectionEntity addToSet() {
+        CollectionEntityBuilder builder = new CollectionEntityBuilder();
+        for (int sample : samples) {
+            builder.addToCodes(sample);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public CollectionEntity addToArray() {
+        CollectionEntityBuilder builder = new CollectionEntityBuilder();
+        for (int sample : samples) {
+            builder.addToSamples(sample);
+        }
+        return builder.build();
+    }
+
+    @Benchmark
+    public CollectionEntity addAllToArray() {
+        return new CollectionEntityBuilder().addAllToSamples(samples).build();
+    }
+
+    @Benchmark
+    public CollectionEntity addToBoxedList() {
+        CollectionEntityBuilder builder = new CollectionEntityBuilder();
+        for (int sample : samples) {
+            builder.addToBoxedSamples(sample);
+        }
+        return builder.build();
+    }
+
+}
@@ -0,0 +1,93 @@
+package me.deadcode.adka.buildergen.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthesizes the sources of annotated entities: in hierarchies of the given depth, each class with the given number
+ * of attributes (of various types) and collections, optionally with a nested type.
+ */
+public class EntitySources {
+
+    private static final int CLASSES_PER_PACKAGE = 100;
+    private static final String[] TYPES = {"String", "int", "long", "boolean", "Double", "java.math.BigDecimal"};
+    private static final String[] COLLECTION_TYPES = {"java.util.List<String>", "java.util.Set<Integer>"};
+
+    private final int fields;
+    private final int collections;
+    private final int depth;
+    private final boolean nestedTypes;
+
+    public EntitySources(int fields, int collections, int depth, boolean nestedTypes) {
+        this.fields = fields;
+        this.collections = collections;
+        this.depth = depth;
+        this.nestedTypes = nestedTypes;
+    }
+
+    /**
+     * @return the written source files
+     */
+    public List<Path> write(Path directory, int count) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String packageName = "entities.p" + (i / CLASSES_PER_PACKAGE);
+            Path packageDirectory = directory.resolve(packageName.replace('.', '/'));
+            Files.createDirectories(packageDirectory);
+
+            Path file = packageDirectory.resolve(className(i) + ".java");
+            Files.write(file, source(packageName, i).getBytes(StandardCharsets.UTF_8));
+            files.add(file);
+        }
+        return files;
+    }
+
+    private String className(int i) {
+        return "Entity" + i;
+    }
+
+    private String source(String packageName, int i) {
+        //each class extends the previous one, unless it starts a new hierarchy
+        boolean root = (depth <= 1) || (i % depth == 0);
+        String parent = root ? null : "entities.p" + ((i - 1) / CLASSES_PER_PACKAGE) + "." + className(i - 1);
+
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(packageName).append(";\n\n");
+        source.append("@me.deadcode.adka.buildergen.annotation.GenerateBuilder\n");
+        source.append("public class ").append(className(i)).append((parent != null) ? " extends " + parent : "")
+                .append(" {\n\n");
+
+        List<String[]> attributes = new ArrayList<>();
+        for (int f = 0; f < fields; f++) {
+            attributes.add(new String[] {TYPES[f % TYPES.length], "field" + i + "x" + f});
+        }
+        for (int c = 0; c < collections; c++) {
+            attributes.add(new String[] {COLLECTION_TYPES[c % COLLECTION_TYPES.length], "items" + i + "x" + c});
+        }
+        if (nestedTypes) {
+            source.append("    public enum Kind { FIRST, SECOND }\n\n");
+            attributes.add(new String[] {"Kind", "kind" + i});
+        }
+
+        for (String[] attribute : attributes) {
+            source.append("    private ").append(attribute[0]).append(' ').append(attribute[1]).append(";\n");
+        }
+        for (String[] attribute : attributes) {
+            String type = attribute[0];
+            String name = attribute[1];
+            String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            source.append("\n    public ").append(type).append(type.equals("boolean") ? " is" : " get").append(capitalized)
+                    .append("() {\n        return ").append(name).append(";\n    }\n");
+            source.append("\n    public void set").append(capitalized).append('(').append(type).append(' ').append(name)
+                    .append(") {\n        this.").append(name).append(" = ").append(name).append(";\n    }\n");
+        }
+
+        source.append("\n}\n");
+        return source.toString();
+    }
+
+}
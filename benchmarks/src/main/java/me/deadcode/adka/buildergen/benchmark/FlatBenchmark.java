@@ -0,0 +1,77 @@
+package me.deadcode.adka.buildergen.benchmark;
+
+import me.deadcode.adka.buildergen.benchmark.model.FlatEntity;
+import me.deadcode.adka.buildergen.benchmark.model.FlatEntityBuilder;
+import me.deadcode.adka.buildergen.benchmark.model.ImmutableFlatEntity;
+import me.deadcode.adka.buildergen.benchmark.model.ImmutableFlatEntityBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a flat entity with the generated builders, compared to calling the setters or the constructor directly.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FlatBenchmark {
+
+    //not constants, so that nothing gets folded away
+    private long id = 42;
+    private String name = "name";
+    private String description = "description";
+    private int quantity = 7;
+    private double price = 9.99;
+    private boolean active = true;
+    private Long parentId = 41L;
+    private String category = "category";
+
+    private final FlatEntityBuilder reusedBuilder = new FlatEntityBuilder();
+
+    @Benchmark
+    public FlatEntity setters() {
+        FlatEntity entity = new FlatEntity();
+        entity.setId(id);
+        entity.setName(name);
+        entity.setDescription(description);
+        entity.setQuantity(quantity);
+        entity.setPrice(price);
+        entity.setActive(active);
+        entity.setParentId(parentId);
+        entity.setCategory(category);
+        return entity;
+    }
+
+    @Benchmark
+    public FlatEntity builder() {
+        return new FlatEntityBuilder().id(id).name(name).description(description).quantity(quantity).price(price)
+                .active(active).parentId(parentId).category(category).build();
+    }
+
+    @Benchmark
+    public FlatEntity reusedBuilder() {
+        return reusedBuilder.id(id).name(name).description(description).quantity(quantity).price(price)
+                .active(active).parentId(parentId).category(category).buildAndReset();
+    }
+
+    @Benchmark
+    public FlatEntity threadLocalBuilder() {
+        return FlatEntityBuilder.local().id(id).name(name).description(description).quantity(quantity).price(price)
+                .active(active).parentId(parentId).category(category).buildAndReset();
+    }
+
+    @Benchmark
+    public ImmutableFlatEntity constructor() {
+        return new ImmutableFlatEntity(id, name, description, quantity, price, active, parentId, category);
+    }
+
+    @Benchmark
+    public ImmutableFlatEntity constructorBuilder() {
+        return new ImmutableFlatEntityBuilder().id(id).name(name).description(description).quantity(quantity)
+                .price(price).active(active).parentId(parentId).category(category).build();
+    }
+
+}
@@ -0,0 +1,81 @@
+package me.deadcode.adka.buildergen.benchmark;
+
+import me.deadcode.adka.buildergen.benchmark.model.Level3;
+import me.deadcode.adka.buildergen.benchmark.model.Level3Builder;
+import me.deadcode.adka.buildergen.benchmark.model.Level5;
+import me.deadcode.adka.buildergen.benchmark.model.Level5Builder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and copying the leaf of a five-level hierarchy with the generated builders, compared to calling the
+ * setters directly.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HierarchyBenchmark {
+
+    private Level5 source;
+    private Object untypedSource;
+    private Level3 parentSource;
+
+    @Setup
+    public void setUp() {
+        source = new Level5Builder().id(1).name("name").code("code").version(2).owner("owner").shared(true)
+                .weight(3.5).location("location").timestamp(4).status("status").build();
+        untypedSource = source;
+        //an actual instance of the parent, so that from(Object) takes the branch copying the parent's attributes only
+        parentSource = new Level3Builder().id(1).name("name").code("code").version(2).owner("owner").shared(true)
+                .build();
+    }
+
+    @Benchmark
+    public Level5 setters() {
+        Level5 entity = new Level5();
+        entity.setId(source.getId());
+        entity.setName(source.getName());
+        entity.setCode(source.getCode());
+        entity.setVersion(source.getVersion());
+        entity.setOwner(source.getOwner());
+        entity.setShared(source.isShared());
+        entity.setWeight(source.getWeight());
+        entity.setLocation(source.getLocation());
+        entity.setTimestamp(source.getTimestamp());
+        entity.setStatus(source.getStatus());
+        return entity;
+    }
+
+    @Benchmark
+    public Level5 builder() {
+        return new Level5Builder().id(source.getId()).name(source.getName()).code(source.getCode())
+                .version(source.getVersion()).owner(source.getOwner()).shared(source.isShared())
+                .weight(source.getWeight()).location(source.getLocation()).timestamp(source.getTimestamp())
+                .status(source.getStatus()).build();
+    }
+
+    @Benchmark
+    public Level5 from() {
+        return new Level5Builder().from(source).build();
+    }
+
+    @Benchmark
+    public Level5 fromObject() {
+        return new Level5Builder().from(untypedSource).build();
+    }
+
+    @Benchmark
+    public Level5 fromIgnoreNull() {
+        return new Level5Builder().fromIgnoreNull(source).build();
+    }
+
+    @Benchmark
+    public Level5 fromParent() {
+        return new Level5Builder().from((Object) parentSource).build();
+    }
+
+}
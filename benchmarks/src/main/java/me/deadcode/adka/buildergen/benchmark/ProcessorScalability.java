@@ -0,0 +1,261 @@
+package me.deadcode.adka.buildergen.benchmark;
+
+import me.deadcode.adka.buildergen.BuilderGeneratorProcessor;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.*;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * Measures how the annotation processor scales with the number of annotated classes: synthesizes the given numbers
+ * of entities, runs the processor over them in-process (annotation processing only, no class files are written) and
+ * reports the wall time of the whole compilation, the time spent in the processor, per class, and the peak heap.
+ *
+ * Usage: {@code ProcessorScalability [--sizes 100,1000,10000] [--fields 8] [--collections 2] [--depth 3]
+ * [--nested-types] [--output nested|separate] [--threads n] [--cache] [--keep]}.
+ * With {@code --cache}, each size is processed twice, the second time with all the classes unchanged.
+ */
+public class ProcessorScalability {
+
+    private static final int WARMUP_SIZE = 100;
+
+    private final EntitySources entitySources;
+    private final List<String> processorOptions = new ArrayList<>();
+    private final boolean cache;
+    private final boolean keep;
+
+    private ProcessorScalability(EntitySources entitySources, String output, String threads, boolean cache, boolean keep) {
+        this.entitySources = entitySources;
+        this.cache = cache;
+        this.keep = keep;
+
+        processorOptions.add("-Abuildergen.output=" + output);
+        if (threads != null) {
+            processorOptions.add("-Abuildergen.threads=" + threads);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parse(args);
+        int[] sizes = Arrays.stream(options.getOrDefault("sizes", "100,1000,10000").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+
+        ProcessorScalability scalability = new ProcessorScalability(
+                new EntitySources(Integer.parseInt(options.getOrDefault("fields", "8")),
+                        Integer.parseInt(options.getOrDefault("collections", "2")),
+                        Integer.parseInt(options.getOrDefault("depth", "3")),
+                        options.containsKey("nested-types")),
+                options.getOrDefault("output", "nested"), options.get("threads"),
+                options.containsKey("cache"), options.containsKey("keep"));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            System.err.println("No system Java compiler available; run on a JDK");
+            System.exit(1);
+        }
+
+        //the first compilations are much slower until the compiler and the processor are compiled by the JIT
+        scalability.run(compiler, WARMUP_SIZE, false);
+
+        System.out.println(String.format("%8s %6s %10s %14s %14s %14s", "classes", "run", "wall [ms]", "processor [ms]",
+                "per class [ms]", "peak heap [MB]"));
+        for (int size : sizes) {
+            scalability.run(compiler, size, true);
+        }
+    }
+
+    private void run(JavaCompiler compiler, int size, boolean report) throws IOException {
+        Path directory = Files.createTempDirectory("buildergen-scalability-" + size + "-");
+        try {
+            List<Path> sources = entitySources.write(directory.resolve("src"), size);
+
+            Measurement cold = compile(compiler, directory, sources);
+            if (report) {
+                print(size, "full", cold);
+            }
+
+            if (cache) {
+                Measurement warm = compile(compiler, directory, sources);
+                if (report) {
+                    print(size, "cached", warm);
+                }
+            }
+        } finally {
+            if (keep && report) {
+                System.out.println("Sources kept in " + directory);
+            } else {
+                delete(directory);
+            }
+        }
+    }
+
+    private Measurement compile(JavaCompiler compiler, Path directory, List<Path> sources) throws IOException {
+        Path generated = Files.createDirectories(directory.resolve("generated"));
+
+        List<String> options = new ArrayList<>(Arrays.asList("-proc:only", "-s", generated.toString(),
+                "-classpath", System.getProperty("java.class.path"), "-nowarn"));
+        options.addAll(processorOptions);
+        options.add("-Abuildergen.cache=" + (cache ? directory.resolve("cache.properties").toString() : ""));
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        TimedProcessor processor = new TimedProcessor(new BuilderGeneratorProcessor());
+
+        resetPeakHeap();
+        long start = System.nanoTime();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null,
+                StandardCharsets.UTF_8)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+                    fileManager.getJavaFileObjectsFromFiles(toFiles(sources)));
+            task.setProcessors(Collections.singletonList(processor));
+            task.call();
+        }
+        long wallNanos = System.nanoTime() - start;
+
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                System.err.println(diagnostic);
+            }
+        }
+
+        return new Measurement(wallNanos, processor.nanos, peakHeap());
+    }
+
+    private void print(int size, String run, Measurement measurement) {
+        System.out.println(String.format("%8d %6s %10d %14d %14.3f %14d", size, run, measurement.wallNanos / 1_000_000,
+                measurement.processorNanos / 1_000_000, measurement.processorNanos / 1_000_000.0 / size,
+                measurement.peakHeapBytes / (1024 * 1024)));
+    }
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        //the sum of the peaks of all the pools; an upper bound, as the peaks are not necessarily simultaneous
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static List<java.io.File> toFiles(List<Path> paths) {
+        List<java.io.File> files = new ArrayList<>();
+        paths.forEach(path -> files.add(path.toFile()));
+        return files;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (! args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument '" + args[i] + "'");
+            }
+            String name = args[i].substring(2);
+            boolean flag = name.equals("nested-types") || name.equals("cache") || name.equals("keep");
+            if (! flag && (i + 1 >= args.length)) {
+                throw new IllegalArgumentException("Missing value of '" + args[i] + "'");
+            }
+            options.put(name, flag ? "true" : args[++i]);
+        }
+        return options;
+    }
+
+    private static class Measurement {
+        private final long wallNanos;
+        private final long processorNanos;
+        private final long peakHeapBytes;
+
+        private Measurement(long wallNanos, long processorNanos, long peakHeapBytes) {
+            this.wallNanos = wallNanos;
+            this.processorNanos = processorNanos;
+            this.peakHeapBytes = peakHeapBytes;
+        }
+    }
+
+    /**
+     * Delegates to the measured processor, adding up the time spent in it.
+     */
+    private static class TimedProcessor implements Processor {
+        private final Processor processor;
+        private long nanos;
+
+        private TimedProcessor(Processor processor) {
+            this.processor = processor;
+        }
+
+        @Override
+        public Set<String> getSupportedOptions() {
+            return processor.getSupportedOptions();
+        }
+
+        @Override
+        public Set<String> getSupportedAnnotationTypes() {
+            return processor.getSupportedAnnotationTypes();
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return processor.getSupportedSourceVersion();
+        }
+
+        @Override
+        public void init(ProcessingEnvironment processingEnv) {
+            long start = System.nanoTime();
+            processor.init(processingEnv);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+            long start = System.nanoTime();
+            try {
+                return processor.process(annotations, roundEnv);
+            } finally {
+                nanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public Iterable<? extends Completion> getCompletions(Element element, AnnotationMirror annotation,
+                                                             ExecutableElement member, String userText) {
+            return processor.getCompletions(element, annotation, member, userText);
+        }
+    }
+
+}
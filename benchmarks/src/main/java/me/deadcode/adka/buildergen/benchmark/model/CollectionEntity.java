@@ -0,0 +1,60 @@
+package me.deadcode.adka.buildergen.benchmark.model;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An entity with collections and arrays, all of them left to the builder to create.
+ */
+@GenerateBuilder
+public class CollectionEntity {
+
+    private String name;
+    private List<String> items;
+    private Set<Integer> codes;
+    private int[] samples;
+    private List<Integer> boxedSamples;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<String> getItems() {
+        return items;
+    }
+
+    public void setItems(List<String> items) {
+        this.items = items;
+    }
+
+    public Set<Integer> getCodes() {
+        return codes;
+    }
+
+    public void setCodes(Set<Integer> codes) {
+        this.codes = codes;
+    }
+
+    public int[] getSamples() {
+        return samples;
+    }
+
+    public void setSamples(int[] samples) {
+        this.samples = samples;
+    }
+
+    public List<Integer> getBoxedSamples() {
+        return boxedSamples;
+    }
+
+    public void setBoxedSamples(List<Integer> boxedSamples) {
+        this.boxedSamples = boxedSamples;
+    }
+
+}
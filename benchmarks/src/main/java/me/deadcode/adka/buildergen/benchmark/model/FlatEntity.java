@@ -0,0 +1,84 @@
+package me.deadcode.adka.buildergen.benchmark.model;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+/**
+ * A typical flat entity with attributes of various types.
+ */
+@GenerateBuilder(reusable = true)
+public class FlatEntity {
+
+    private long id;
+    private String name;
+    private String description;
+    private int quantity;
+    private double price;
+    private boolean active;
+    private Long parentId;
+    private String category;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public void setPrice(double price) {
+        this.price = price;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    public Long getParentId() {
+        return parentId;
+    }
+
+    public void setParentId(Long parentId) {
+        this.parentId = parentId;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+}
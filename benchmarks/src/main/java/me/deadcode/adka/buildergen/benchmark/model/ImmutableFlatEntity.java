@@ -0,0 +1,64 @@
+package me.deadcode.adka.buildergen.benchmark.model;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+/**
+ * The same attributes as {@link FlatEntity}, but final, built via the constructor.
+ */
+@GenerateBuilder(buildMode = GenerateBuilder.BuildMode.CONSTRUCTOR)
+public class ImmutableFlatEntity {
+
+    private final long id;
+    private final String name;
+    private final String description;
+    private final int quantity;
+    private final double price;
+    private final boolean active;
+    private final Long parentId;
+    private final String category;
+
+    public ImmutableFlatEntity(long id, String name, String description, int quantity, double price, boolean active,
+                               Long parentId, String category) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.quantity = quantity;
+        this.price = price;
+        this.active = active;
+        this.parentId = parentId;
+        this.category = category;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public Long getParentId() {
+        return parentId;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+}
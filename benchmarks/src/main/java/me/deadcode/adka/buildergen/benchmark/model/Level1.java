@@ -0,0 +1,30 @@
+package me.deadcode.adka.buildergen.benchmark.model;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+/**
+ * The root of a five-level hierarchy of entities.
+ */
+@GenerateBuilder
+public class Level1 {
+
+    private long id;
+    private String name;
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+}
@@ -0,0 +1,30 @@
+package me.deadcode.adka.buildergen.benchmark.model;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+/**
+ * Level 2 of the hierarchy.
+ */
+@GenerateBuilder
+public class Level2 extends Level1 {
+
+    private String code;
+    private int version;
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+}
@@ -0,0 +1,30 @@
+package me.deadcode.adka.buildergen.benchmark.model;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+/**
+ * Level 3 of the hierarchy.
+ */
+@GenerateBuilder
+public class Level3 extends Level2 {
+
+    private String owner;
+    private boolean shared;
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    public void setShared(boolean shared) {
+        this.shared = shared;
+    }
+
+}
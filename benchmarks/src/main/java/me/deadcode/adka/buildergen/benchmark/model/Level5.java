@@ -0,0 +1,30 @@
+package me.deadcode.adka.buildergen.benchmark.model;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+/**
+ * The leaf of the hierarchy, inheriting the attributes of all the four levels above.
+ */
+@GenerateBuilder
+public class Level5 extends Level4 {
+
+    private long timestamp;
+    private String status;
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+}
@@ -0,0 +1,103 @@
+package me.deadcode.adka.buildergen;
+
+/**
+ * An attribute of an annotated class for which the builder methods are generated.
+ * Immutable snapshot of the compiler's model, so it can be used outside of the processing thread.
+ */
+public class AttributeModel {
+
+    private final String name;
+    private final String type;
+    private final boolean primitive;
+    private final boolean collection;
+    private final boolean array;
+    private final String elementType;
+    private final String implementationType;
+    private final int expectedSize;
+    private final String getter;
+    private final String setter;
+
+    public AttributeModel(String name, String type, boolean primitive, boolean collection, boolean array,
+                          String elementType, String implementationType, int expectedSize, String getter, String setter) {
+        this.name = name;
+        this.type = type;
+        this.primitive = primitive;
+        this.collection = collection;
+        this.array = array;
+        this.elementType = elementType;
+        this.implementationType = implementationType;
+        this.expectedSize = expectedSize;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the fully qualified type including the type arguments, as it should appear in the generated code
+     */
+    public String getType() {
+        return type;
+    }
+
+    public boolean isPrimitive() {
+        return primitive;
+    }
+
+    public boolean isCollection() {
+        return collection;
+    }
+
+    public boolean isArray() {
+        return array;
+    }
+
+    /**
+     * @return the type of the elements of a collection or an array attribute
+     */
+    public String getElementType() {
+        return elementType;
+    }
+
+    /**
+     * @return the class to instantiate for a collection attribute, see {@link TypeResolver#getImplementationType},
+     * or the erasure of the type of the elements of an array attribute (i.e. the type of a new array of them)
+     */
+    public String getImplementationType() {
+        return implementationType;
+    }
+
+    /**
+     * @return the expected number of elements of a collection or an array attribute, {@code 0} if not known
+     */
+    public int getExpectedSize() {
+        return expectedSize;
+    }
+
+    /**
+     * @return the name of the getter, {@code null} if there is none; the attribute is then neither copied by the
+     * {@code from} methods nor tracked, and in the setters build mode it is only set as a whole
+     */
+    public String getGetter() {
+        return getter;
+    }
+
+    /**
+     * @return the name of the setter, {@code null} in the constructor build mode
+     */
+    public String getSetter() {
+        return setter;
+    }
+
+    @Override
+    public String toString() {
+        //everything the generated code depends on, as the cache relies on it
+        return type + " " + name + " (" + getter + "/" + setter + (collection ? ", collection" : "") +
+                (array ? ", array" : "") + ((elementType != null) ? ", of " + elementType : "") +
+                ((implementationType != null) ? ", as " + implementationType : "") +
+                ((expectedSize > 0) ? ", expecting " + expectedSize : "") + ")";
+    }
+
+}
@@ -0,0 +1,80 @@
+package me.deadcode.adka.buildergen;
+
+import org.jboss.forge.roaster._shade.org.eclipse.jdt.core.ToolFactory;
+import org.jboss.forge.roaster._shade.org.eclipse.jdt.core.formatter.CodeFormatter;
+import org.jboss.forge.roaster._shade.org.eclipse.jface.text.BadLocationException;
+import org.jboss.forge.roaster._shade.org.eclipse.jface.text.Document;
+import org.jboss.forge.roaster._shade.org.eclipse.text.edits.TextEdit;
+import org.jboss.forge.roaster.model.util.Formatter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Formats the generated builders with the Eclipse formatter configured in {@code options.properties} (the same one
+ * Roaster uses). The options are loaded only once, and the formatters are reused, at most one per concurrent caller,
+ * since a formatter instance cannot be shared between threads.
+ */
+public class BuilderFormatter {
+
+    private static final String OPTIONS = "options.properties";
+
+    private final Properties options;
+    private final Queue<CodeFormatter> idleFormatters = new ConcurrentLinkedQueue<>();
+
+    public BuilderFormatter() throws IOException {
+        try (InputStream is = BuilderFormatter.class.getClassLoader().getResourceAsStream(OPTIONS)) {
+            if (is == null) {
+                throw new IOException("Formatter options '" + OPTIONS + "' not found");
+            }
+            Properties properties = new Properties();
+            properties.load(is);
+            //the formatter is shaded in Roaster, and so are the names of its options
+            options = Formatter.applyShadedPackageName(properties);
+        }
+    }
+
+    /**
+     * @param members class body declarations (e.g. nested classes) to be placed directly inside a top-level class
+     * @return the formatted declarations, indented accordingly and ending with a line separator, or the given ones
+     * if they cannot be formatted
+     */
+    public String formatMembers(String members) {
+        CodeFormatter formatter = idleFormatters.poll();
+        if (formatter == null) {
+            formatter = ToolFactory.createCodeFormatter(options);
+        }
+
+        try {
+            TextEdit edit = formatter.format(CodeFormatter.K_CLASS_BODY_DECLARATIONS | CodeFormatter.F_INCLUDE_COMMENTS,
+                    members, 0, members.length(), 1, System.lineSeparator());
+            if (edit == null) {
+                //not valid Java; better to keep it as it is and let the compiler report the problem
+                return members;
+            }
+
+            Document document = new Document(members);
+            edit.apply(document);
+
+            //the formatter does not keep the empty lines around the declarations consistently
+            String formatted = document.get();
+            int start = 0;
+            while ((start < formatted.length()) && ((formatted.charAt(start) == '\n') || (formatted.charAt(start) == '\r'))) {
+                start++;
+            }
+            int end = formatted.length();
+            while ((end > start) && Character.isWhitespace(formatted.charAt(end - 1))) {
+                end--;
+            }
+            return formatted.substring(start, end) + System.lineSeparator();
+        } catch (BadLocationException e) {
+            return members;
+        } finally {
+            idleFormatters.offer(formatter);
+        }
+    }
+
+}
@@ -0,0 +1,329 @@
+package me.deadcode.adka.buildergen;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Generates the builders of the annotated classes in the given source directories without a full build, and optionally
+ * keeps watching the directories and regenerates the builders of the changed classes (and of their annotated
+ * subclasses) as soon as they are saved.
+ *
+ * The builders are generated from the compiler's model, so the processor is run by an in-process compiler doing
+ * annotation processing only (no attribution of method bodies, no class files). The compiler and its file manager
+ * stay loaded between the runs in the watch mode, and the cache of the processor skips the unchanged classes.
+ *
+ * Usage: {@code BuilderGeneratorCli [--watch] [--classpath path] [--generated dir]
+ * [-Abuildergen.<option>=<value>]... <source directory>...}
+ */
+public class BuilderGeneratorCli {
+
+    private static final String DEFAULT_GENERATED_PATH = "target" + File.separator + "generated-sources" +
+            File.separator + "annotations";
+    private static final String ANNOTATION = "@" + GenerateBuilder.class.getSimpleName();
+    //imported or fully qualified, as in the generated entities
+    private static final Pattern ANNOTATION_USAGE = Pattern.compile("@(" +
+            Pattern.quote(GenerateBuilder.class.getPackage().getName()) + "\\s*\\.\\s*)?" +
+            GenerateBuilder.class.getSimpleName() + "\\b");
+    private static final Pattern EXTENDS = Pattern.compile("\\s*extends\\s+([\\w.]+)");
+    private static final String DOT_JAVA = ".java";
+    //the processor supports the source version it was built for, which need not be the one of the compiler
+    private static final String INCOMPATIBLE_SOURCE_VERSION = "compiler.warn.proc.processor.incompatible.source.version";
+    //editors often save a file in several steps; wait until the events stop coming
+    private static final long QUIET_PERIOD_MILLIS = 50;
+
+    private final List<Path> sourceRoots;
+    private final List<String> compilerOptions = new ArrayList<>();
+    private final JavaCompiler compiler;
+    private final StandardJavaFileManager fileManager;
+
+    //content hashes of all the sources, to tell the actual changes from the files rewritten by the processor itself
+    private final Map<Path, String> hashes = new HashMap<>();
+    //the annotated sources and the simple names of the classes they extend
+    private final Map<Path, String> annotatedSources = new HashMap<>();
+
+    private BuilderGeneratorCli(List<Path> sourceRoots, Map<String, String> options, List<String> processorOptions,
+                                JavaCompiler compiler) throws IOException {
+        this.sourceRoots = sourceRoots;
+        this.compiler = compiler;
+        this.fileManager = compiler.getStandardFileManager(null, null, Charset.defaultCharset());
+
+        //the annotation (and the processor) must be resolvable by the compiler as well
+        String classpath = options.containsKey("classpath") ?
+                options.get("classpath") + File.pathSeparator + System.getProperty("java.class.path") :
+                System.getProperty("java.class.path");
+        StringBuilder sourcepath = new StringBuilder();
+        for (Path sourceRoot : sourceRoots) {
+            sourcepath.append(sourcepath.length() == 0 ? "" : File.pathSeparator).append(sourceRoot);
+        }
+
+        Path generated = Files.createDirectories(Paths.get(options.getOrDefault("generated", DEFAULT_GENERATED_PATH)));
+        compilerOptions.addAll(Arrays.asList("-proc:only", "-implicit:none", "-classpath", classpath,
+                "-sourcepath", sourcepath.toString(), "-s", generated.toString()));
+        compilerOptions.addAll(processorOptions);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        List<String> processorOptions = new ArrayList<>();
+        List<Path> sourceRoots = new ArrayList<>();
+        try {
+            parse(args, options, processorOptions, sourceRoots);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: BuilderGeneratorCli [--watch] [--classpath path] [--generated dir] " +
+                    "[-Abuildergen.<option>=<value>]... <source directory>...");
+            System.exit(2);
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            System.err.println("No system Java compiler available; run on a JDK");
+            System.exit(1);
+        }
+
+        BuilderGeneratorCli cli = new BuilderGeneratorCli(sourceRoots, options, processorOptions, compiler);
+        boolean success = cli.generate(cli.scan());
+        if (options.containsKey("watch")) {
+            cli.watch();
+        }
+        System.exit(success ? 0 : 1);
+    }
+
+    /**
+     * @return the annotated sources in all the source directories
+     */
+    private Set<Path> scan() throws IOException {
+        for (Path sourceRoot : sourceRoots) {
+            Files.walkFileTree(sourceRoot, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    if (file.toString().endsWith(DOT_JAVA)) {
+                        update(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        return new TreeSet<>(annotatedSources.keySet());
+    }
+
+    private void watch() throws IOException, InterruptedException {
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        Map<WatchKey, Path> directories = new HashMap<>();
+        for (Path sourceRoot : sourceRoots) {
+            register(watchService, directories, sourceRoot);
+        }
+        System.out.println("Watching " + sourceRoots + " for changes");
+
+        while (true) {
+            Set<Path> changedFiles = new TreeSet<>();
+            WatchKey key = watchService.take();
+            while (key != null) {
+                Path directory = directories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        //some changes were lost; find them by their content
+                        changedFiles.addAll(hashes.keySet());
+                        continue;
+                    }
+
+                    Path path = directory.resolve((Path) event.context());
+                    if (Files.isDirectory(path)) {
+                        //the sources may have been created before the directory got watched
+                        register(watchService, directories, path);
+                        try (Stream<Path> files = Files.walk(path)) {
+                            files.filter(file -> file.toString().endsWith(DOT_JAVA)).forEach(changedFiles::add);
+                        }
+                    } else if (path.toString().endsWith(DOT_JAVA)) {
+                        changedFiles.add(path);
+                    }
+                }
+                if (! key.reset()) {
+                    directories.remove(key);
+                }
+                key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+            }
+
+            Set<Path> sources = new TreeSet<>();
+            Set<String> changedClasses = new HashSet<>();
+            for (Path changedFile : changedFiles) {
+                if (update(changedFile)) {
+                    changedClasses.add(simpleName(changedFile));
+                    if (annotatedSources.containsKey(changedFile)) {
+                        sources.add(changedFile);
+                    }
+                }
+            }
+            //the builders of the subclasses inherit the attributes of the changed classes
+            boolean added = true;
+            while (added) {
+                added = false;
+                for (Map.Entry<Path, String> annotatedSource : annotatedSources.entrySet()) {
+                    if ((annotatedSource.getValue() != null) && changedClasses.contains(annotatedSource.getValue()) &&
+                            sources.add(annotatedSource.getKey())) {
+                        changedClasses.add(simpleName(annotatedSource.getKey()));
+                        added = true;
+                    }
+                }
+            }
+
+            if (! sources.isEmpty()) {
+                try {
+                    generate(sources);
+                } catch (IOException | RuntimeException e) {
+                    //e.g. a source being saved again or a bug in the processor; the next change may succeed
+                    System.err.println("Failed to generate builders of " + sources + ": " + e);
+                }
+            }
+        }
+    }
+
+    private boolean generate(Collection<Path> sources) throws IOException {
+        if (sources.isEmpty()) {
+            System.out.println("No classes annotated with " + ANNOTATION + " found");
+            return true;
+        }
+
+        long start = System.nanoTime();
+        List<File> files = new ArrayList<>();
+        for (Path source : sources) {
+            files.add(source.toFile());
+        }
+
+        boolean[] errors = {false};
+        DiagnosticListener<JavaFileObject> diagnosticListener = diagnostic -> {
+            if (INCOMPATIBLE_SOURCE_VERSION.equals(diagnostic.getCode())) {
+                return;
+            }
+            errors[0] |= diagnostic.getKind() == Diagnostic.Kind.ERROR;
+            System.err.println(diagnostic);
+        };
+
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnosticListener, compilerOptions,
+                null, fileManager.getJavaFileObjectsFromFiles(files));
+        //a new processor for each run, as it keeps the state of a single compilation
+        task.setProcessors(Collections.singletonList(new BuilderGeneratorProcessor()));
+        boolean success = task.call() && ! errors[0];
+
+        //the nested builders have just been written into the sources; that is not a change to react to
+        for (Path source : sources) {
+            update(source);
+        }
+
+        System.out.println(String.format("%s builders of %d class(es) in %d ms", success ? "Generated" : "Failed to generate",
+                sources.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        return success;
+    }
+
+    /**
+     * Reads the given source again.
+     *
+     * @return whether it has changed since it was read last time
+     */
+    private boolean update(Path file) throws IOException {
+        if (! Files.isRegularFile(file)) {
+            annotatedSources.remove(file);
+            return hashes.remove(file) != null;
+        }
+
+        String content = new String(Files.readAllBytes(file), Charset.defaultCharset());
+        String hash = GeneratedSourceCache.hash(content);
+        if (hash.equals(hashes.put(file, hash))) {
+            return false;
+        }
+
+        if (ANNOTATION_USAGE.matcher(content).find()) {
+            annotatedSources.put(file, superclassOf(content, simpleName(file)));
+        } else {
+            annotatedSources.remove(file);
+        }
+        return true;
+    }
+
+    /**
+     * @return the simple name of the class the top-level class of the given source extends, {@code null} if none (or
+     * not found)
+     */
+    private static String superclassOf(String content, String className) {
+        //the top-level class is named after the file; the nested classes (such as the builders) have other names
+        Matcher declaration = Pattern.compile("\\bclass\\s+" + Pattern.quote(className) + "\\b").matcher(content);
+        if (! declaration.find()) {
+            return null;
+        }
+
+        //the bounds of the type parameters may extend other classes
+        int position = declaration.end();
+        while ((position < content.length()) && Character.isWhitespace(content.charAt(position))) {
+            position++;
+        }
+        if ((position < content.length()) && (content.charAt(position) == '<')) {
+            int depth = 0;
+            do {
+                char c = content.charAt(position++);
+                depth += (c == '<') ? 1 : (c == '>') ? -1 : 0;
+            } while ((depth > 0) && (position < content.length()));
+        }
+
+        Matcher superclass = EXTENDS.matcher(content).region(position, content.length());
+        return superclass.lookingAt() ? simpleName(superclass.group(1)) : null;
+    }
+
+    private void register(WatchService watchService, Map<WatchKey, Path> directories, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                directories.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static String simpleName(Path file) {
+        String fileName = file.getFileName().toString();
+        return fileName.substring(0, fileName.length() - DOT_JAVA.length());
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private static void parse(String[] args, Map<String, String> options, List<String> processorOptions,
+                              List<Path> sourceRoots) {
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("-A")) {
+                processorOptions.add(args[i]);
+            } else if (args[i].startsWith("--")) {
+                String name = args[i].substring(2);
+                boolean flag = name.equals("watch");
+                if (! flag && ! Arrays.asList("classpath", "generated").contains(name)) {
+                    throw new IllegalArgumentException("Unknown option '" + args[i] + "'");
+                }
+                if (! flag && (i + 1 >= args.length)) {
+                    throw new IllegalArgumentException("Missing value of '" + args[i] + "'");
+                }
+                options.put(name, flag ? "true" : args[++i]);
+            } else if (Files.isDirectory(Paths.get(args[i]))) {
+                sourceRoots.add(Paths.get(args[i]).toAbsolutePath().normalize());
+            } else {
+                throw new IllegalArgumentException("Source directory '" + args[i] + "' not found");
+            }
+        }
+
+        if (sourceRoots.isEmpty()) {
+            throw new IllegalArgumentException("No source directory given");
+        }
+    }
+
+}
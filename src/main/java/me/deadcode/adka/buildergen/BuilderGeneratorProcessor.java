@@ -1,11 +1,7 @@
 package me.deadcode.adka.buildergen;
 
+import com.sun.source.util.Trees;
 import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
-import org.jboss.forge.roaster.Roaster;
-import org.jboss.forge.roaster.model.Type;
-import org.jboss.forge.roaster.model.source.FieldSource;
-import org.jboss.forge.roaster.model.source.JavaClassSource;
-import org.jboss.forge.roaster.model.source.JavaDocSource;
 
 import javax.annotation.processing.*;
 import javax.lang.model.SourceVersion;
@@ -13,360 +9,508 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.TypeElement;
 import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
 import java.io.*;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
-import static java.lang.System.lineSeparator;
-import static me.deadcode.adka.buildergen.JavaElements.*;
-
 @SupportedAnnotationTypes("me.deadcode.adka.buildergen.annotation.GenerateBuilder")
 @SupportedSourceVersion(SourceVersion.RELEASE_8)
+@SupportedOptions({BuilderGeneratorProcessor.OPTION_CACHE, BuilderGeneratorProcessor.OPTION_THREADS,
+        BuilderGeneratorProcessor.OPTION_OUTPUT, BuilderGeneratorProcessor.OPTION_FORMAT,
+        BuilderGeneratorProcessor.OPTION_STATS})
 public class BuilderGeneratorProcessor extends AbstractProcessor {
 
-    private static final String CONCRETE_BUILDER_NAME = "%sBuilder";
-    private static final String ABSTRACT_BUILDER_NAME = "Abstract" + CONCRETE_BUILDER_NAME;
-    private static final String EXTENDS_PARENT_CLASS_ABSTRACT_BUILDER = " extends " + ABSTRACT_BUILDER_NAME + "<T, B>";
-
-    private static final String CONCRETE_BUILDER_CLASS_TEMPLATE = "public static class " + CONCRETE_BUILDER_NAME +
-            " extends " + ABSTRACT_BUILDER_NAME + "<%s, " + CONCRETE_BUILDER_NAME + "> { }";
-    private static final String ABSTRACT_BUILDER_CLASS_TEMPLATE = "public static abstract class " + ABSTRACT_BUILDER_NAME +
-            "<T extends %s, B extends " + ABSTRACT_BUILDER_NAME + "<T, B>>%s { }";
-
-    private static final String NOTE_GENERATED_CODE = "Note: generated code. All changes will be undone on the next build " +
-            "as long as the enclosing class is annotated with @GenerateBuilder.";
-
+    //path to the file with the content hashes of the processed classes; the cache is disabled if set to an empty value
+    static final String OPTION_CACHE = "buildergen.cache";
+    private static final String CACHE_DIRECTORY = "buildergen";
+    private static final String CACHE_FILE = "cache.properties";
+    //only used if the compiled classes are not written to a directory; relative to the working directory
+    private static final String DEFAULT_CACHE_PATH = "target" + File.separator + CACHE_DIRECTORY + File.separator +
+            CACHE_FILE;
+    //bump whenever the shape of the generated code changes, so that all cached classes get regenerated
+    private static final String CACHE_VERSION = "11";
+    //number of classes generated in parallel; defaults to the number of available processors
+    static final String OPTION_THREADS = "buildergen.threads";
+    //where to place the builders of classes that do not specify it in the annotation: nested (default) or separate
+    static final String OPTION_OUTPUT = "buildergen.output";
+    //whether the generated nested builders are formatted (default); the formatting can be skipped e.g. on CI builds
+    static final String OPTION_FORMAT = "buildergen.format";
+    //path to a JSON report with the timings of all the phases per class and in total; no report unless set
+    static final String OPTION_STATS = "buildergen.stats";
+
+    //reported to Gradle, which registers the processor as dynamic, when the processor is isolating
+    private static final String GRADLE_ISOLATING = "org.gradle.annotation.processing.isolating";
+    private static final String GRADLE_PACKAGE = "org.gradle.";
+
+    static final String CONCRETE_BUILDER_NAME = "%sBuilder";
+    static final String ABSTRACT_BUILDER_NAME = "Abstract" + CONCRETE_BUILDER_NAME;
+
+    //only used if the compiler does not provide its syntax trees
     private static final String CLASSES_PATH_PREFIX = "src" + File.separator + "main" + File.separator + "java" + File.separator;
     private static final String DOT_JAVA = ".java";
 
-    private static final String GET_OBJ = "getObj";
-    private static final String GET_OBJ__ = GET_OBJ + "()";
-    private static final String BUILD = "build";
-    private static final String GET_THIS_BUILDER = "getThisBuilder";
-    private static final String GET_THIS_BUILDER__ = GET_THIS_BUILDER + "()";
-    private static final String FROM = "from";
-    private static final String FROM_IGNORE_NULL = "fromIgnoreNull";
-    private static final String ADD_TO = "addTo";
-    private static final String ADD_ALL_TO = "addAllTo";
-    private static final String ELEMENT = "Element";
-    private static final String OBJECT = "object";
+    static final String GET_OBJ = "getObj";
+    static final String GET_OBJ__ = GET_OBJ + "()";
+    static final String BUILD = "build";
+    static final String BUILD_AND_RESET = "buildAndReset";
+    static final String RESET = "reset";
+    static final String LOCAL = "local";
+    static final String GET_THIS_BUILDER = "getThisBuilder";
+    static final String GET_THIS_BUILDER__ = GET_THIS_BUILDER + "()";
+    static final String FROM = "from";
+    static final String FROM_IGNORE_NULL = "fromIgnoreNull";
+    static final String ADD_TO = "addTo";
+    static final String ADD_ALL_TO = "addAllTo";
+    static final String ELEMENT = "Element";
+    static final String BUFFER = "Buffer";
+    static final String BUFFER_SIZE = "BufferSize";
+    static final String GROW = "grow";
+    static final String SHARED = "Shared";
+    static final String FILL_ARRAYS = "fillArrays";
+    static final String CHANGES = "changes";
+    static final String APPLY_TO = "applyTo";
+    static final String CHANGED_FIELDS = "changedFields";
+    static final String OBJECT = "object";
 
     private Messager messager;
-
-    private boolean firstRound = true;
+    private GeneratedSourceCache cache;
+    private int threads;
+    private GenerateBuilder.Output defaultOutput = GenerateBuilder.Output.NESTED;
+    private boolean gradle;
+    private boolean nestedInGradleReported;
+    private Trees trees;
+    private BuilderFormatter builderFormatter;
+    private BuilderIndex builderIndex;
+    private BuilderModelFactory builderModelFactory;
+    private final ProcessingStats stats = new ProcessingStats();
+    private File statsFile;
+    private final BuilderSourceGenerator builderSourceGenerator = new BuilderSourceGenerator();
+
+    //the classes processed in the previous rounds
+    private final Set<String> processedClasses = new HashSet<>();
 
     @Override
     public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
         this.messager = processingEnv.getMessager();
+
+        //javac passes an option with an empty value as null
+        String cachePath = processingEnv.getOptions().containsKey(OPTION_CACHE) ?
+                processingEnv.getOptions().get(OPTION_CACHE) : defaultCachePath(processingEnv.getFiler());
+        if ((cachePath != null) && ! cachePath.isEmpty()) {
+            cache = new GeneratedSourceCache(new File(cachePath));
+            try {
+                cache.load();
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.WARNING, "BuilderGenerator: Unable to read the cache, " +
+                        "all classes will be regenerated: " + e);
+            }
+        }
+
+        threads = Runtime.getRuntime().availableProcessors();
+        String threadsOption = processingEnv.getOptions().get(OPTION_THREADS);
+        if (threadsOption != null) {
+            try {
+                threads = Integer.parseInt(threadsOption.trim());
+            } catch (NumberFormatException e) {
+                messager.printMessage(Diagnostic.Kind.WARNING, "BuilderGenerator: Invalid value of " + OPTION_THREADS +
+                        " '" + threadsOption + "', using " + threads + " threads");
+            }
+        }
+
+        String outputOption = processingEnv.getOptions().get(OPTION_OUTPUT);
+        if (outputOption != null) {
+            try {
+                defaultOutput = GenerateBuilder.Output.valueOf(outputOption.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                messager.printMessage(Diagnostic.Kind.WARNING, "BuilderGenerator: Invalid value of " + OPTION_OUTPUT +
+                        " '" + outputOption + "', generating nested builders");
+            }
+
+            if (defaultOutput == GenerateBuilder.Output.DEFAULT) {
+                defaultOutput = GenerateBuilder.Output.NESTED;
+            }
+        }
+
+        try {
+            trees = Trees.instance(processingEnv);
+        } catch (IllegalArgumentException e) {
+            //not javac; the classes with nested builders will be looked up and parsed again
+            trees = null;
+        }
+
+        //Gradle tracks the generated files through its own filer
+        gradle = processingEnv.getFiler().getClass().getName().startsWith(GRADLE_PACKAGE);
+
+        builderIndex = new BuilderIndex(processingEnv.getElementUtils());
+        builderModelFactory = new BuilderModelFactory(processingEnv, defaultOutput, stats, builderIndex);
+
+        String statsPath = processingEnv.getOptions().get(OPTION_STATS);
+        if ((statsPath != null) && ! statsPath.isEmpty()) {
+            statsFile = new File(statsPath);
+        }
+
+        if (! "false".equalsIgnoreCase(processingEnv.getOptions().get(OPTION_FORMAT))) {
+            try {
+                builderFormatter = new BuilderFormatter();
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.WARNING, "BuilderGenerator: Unable to set up the formatter, " +
+                        "the builders will not be formatted: " + e);
+            }
+        }
     }
 
-    @Override
-    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
-        if (firstRound) {
+    /**
+     * @return the path of the cache next to the directory of the compiled classes (e.g.
+     * {@code target/buildergen/cache.properties} for {@code target/classes}), so that each module of a multi-module
+     * build has its own cache even if all of them are compiled in the same working directory
+     */
+    private static String defaultCachePath(Filer filer) {
+        try {
+            URI resource = filer.getResource(StandardLocation.CLASS_OUTPUT, "", CACHE_FILE).toUri();
+            File classes = "file".equals(resource.getScheme()) ? new File(resource).getParentFile() : null;
+            //without an output directory (e.g. -proc:only), javac resolves the resources against the working directory
+            if ((classes != null) && (classes.getParentFile() != null) &&
+                    ! classes.equals(new File("").getAbsoluteFile())) {
+                return new File(new File(classes.getParentFile(), CACHE_DIRECTORY), CACHE_FILE).getPath();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            //no output directory to derive the path from
+        }
+        return DEFAULT_CACHE_PATH;
+    }
 
-            //hack: first pass through them and get all FQ class names
-            //TODO find a better way to see if the parent class is annotated?
-            Set<String> annotatedClasses = roundEnv.getElementsAnnotatedWith(GenerateBuilder.class)
-                    .stream().map(el -> ((TypeElement) el).getQualifiedName().toString()).collect(Collectors.toSet());
+    /**
+     * Only isolating if the builders are generated separately: the nested ones are written into the sources of the
+     * annotated classes, outside of the filer.
+     */
+    @Override
+    public Set<String> getSupportedOptions() {
+        Set<String> options = new HashSet<>(super.getSupportedOptions());
+        if (isolating()) {
+            options.add(GRADLE_ISOLATING);
+        }
+        return options;
+    }
 
-            //hack to save the FQN for nested classes (later when getting types from Roaster, the enclosing class is not included in it)
-            Map<String, String> nestedClassesFullTypeToRoasterType = new HashMap<>();
-            for (Element el : roundEnv.getElementsAnnotatedWith(GenerateBuilder.class)) {
-                for (Element enclosed : el.getEnclosedElements()) {
-                    if ((enclosed.getKind() == ElementKind.ENUM) || (enclosed.getKind() == ElementKind.CLASS) ||
-                            (enclosed.getKind() == ElementKind.ANNOTATION_TYPE) || (enclosed.getKind() == ElementKind.INTERFACE)) {
+    private boolean isolating() {
+        return defaultOutput == GenerateBuilder.Output.SEPARATE;
+    }
 
-                        String fullName = ((TypeElement) enclosed).getQualifiedName().toString();
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        long start = System.nanoTime();
+
+        //each class is processed on its own, in whichever round it appears, and only the class itself and its
+        //  superclasses are looked at; this keeps the processor isolating for incremental builds
+        List<TypeElement> annotatedClasses = new ArrayList<>();
+        for (Element c : roundEnv.getElementsAnnotatedWith(GenerateBuilder.class)) {
+            if (c.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
+                //this is not a top-level class but rather a nested class/enum, local or anonymous class; ignore for simplicity
+                messager.printMessage(Diagnostic.Kind.MANDATORY_WARNING, "BuilderGenerator: Ignoring nested class/enum '" +
+                        ((TypeElement) c).getQualifiedName() + "'");
+                stats.ignoredNestedClasses++;
+                continue;
+            }
 
-                        String beginning = fullName.substring(0, fullName.lastIndexOf('.'));
-                        String nameAsReturnedByRoaster = beginning.substring(0, beginning.lastIndexOf('.') + 1) +
-                                fullName.substring(fullName.lastIndexOf('.') + 1);
+            if (c.getKind() == ElementKind.ENUM) {
+                //ignore enums as well
+                messager.printMessage(Diagnostic.Kind.MANDATORY_WARNING, "BuilderGenerator: Ignoring enum '" +
+                        ((TypeElement) c).getQualifiedName() + "'");
+                stats.ignoredEnums++;
+                continue;
+            }
 
-                        nestedClassesFullTypeToRoasterType.put(nameAsReturnedByRoaster, fullName);
-                    }
-                }
+            TypeElement classs = (TypeElement) c;
+            if (processedClasses.add(classs.getQualifiedName().toString())) {
+                annotatedClasses.add(classs);
             }
+        }
+
+        //the classes of this compilation are known to get a builder as described by their annotation, whatever the
+        //  builders already compiled from the previous build say
+        for (TypeElement classs : annotatedClasses) {
+            builderIndex.add(builderModelFactory.indexEntryOf(classs));
+        }
 
-            //then process them one by one and only use this helper collection to find the parents
-            for (Element c : roundEnv.getElementsAnnotatedWith(GenerateBuilder.class)) {
-                if (c.getEnclosingElement().getKind() != ElementKind.PACKAGE) {
-                    //this is not a top-level class but rather a nested class/enum, local or anonymous class; ignore for simplicity
-                    messager.printMessage(Diagnostic.Kind.MANDATORY_WARNING, "BuilderGenerator: Ignoring nested class/enum '" +
-                            ((TypeElement) c).getQualifiedName() + "'");
+        //the compiler's model is not thread-safe, so everything needed from it is collected here
+        List<ClassToGenerate> classesToGenerate = new ArrayList<>();
+        for (TypeElement classs : annotatedClasses) {
+            ProcessingStats.ClassStats classStats = stats.forClass(classs.getQualifiedName().toString(),
+                    builderModelFactory.outputOf(classs));
+            long modelStart = System.nanoTime();
+            BuilderModel model = builderModelFactory.create(classs);
+            classStats.addTime(ProcessingStats.Phase.MODEL, modelStart);
+            if (model == null) {
+                //the reason has been reported already
+                continue;
+            }
+            if (gradle && (model.getOutput() == GenerateBuilder.Output.NESTED)) {
+                if (isolating()) {
+                    //Gradle would neither know about the rewritten source nor compile the class again
+                    messager.printMessage(Diagnostic.Kind.ERROR, "BuilderGenerator: Nested builders cannot be " +
+                            "generated in an incremental Gradle build; remove output = NESTED from the annotation",
+                            classs);
                     continue;
                 }
+                if (! nestedInGradleReported) {
+                    //not isolating, so Gradle recompiles everything; correct, but slow
+                    nestedInGradleReported = true;
+                    messager.printMessage(Diagnostic.Kind.WARNING, "BuilderGenerator: Nested builders disable " +
+                            "incremental compilation in Gradle builds; use -A" + OPTION_OUTPUT + "=separate");
+                }
+            }
 
-                if (c.getKind() == ElementKind.ENUM) {
-                    //ignore enums as well
-                    messager.printMessage(Diagnostic.Kind.MANDATORY_WARNING, "BuilderGenerator: Ignoring enum '" +
-                            ((TypeElement) c).getQualifiedName() + "'");
-                    continue;
+            try {
+                if (model.getOutput() == GenerateBuilder.Output.SEPARATE) {
+                    //generated right away; no need to read or rewrite the class itself
+                    long generateStart = System.nanoTime();
+                    builderSourceGenerator.generateSeparate(model, processingEnv.getFiler(), classs, classStats);
+                    classStats.addTime(ProcessingStats.Phase.GENERATE, generateStart);
+                    classStats.written();
+                } else {
+                    long locateStart = System.nanoTime();
+                    ClassSource classSource = locate(classs, model);
+                    classStats.addTime(ProcessingStats.Phase.LOCATE, locateStart);
+                    classesToGenerate.add(new ClassToGenerate(classs, model, classSource, classStats));
                 }
+            } catch (IOException | RuntimeException e) {
+                //as for the nested builders, a failure is an error of the class rather than a crash of the compiler
+                messager.printMessage(Diagnostic.Kind.ERROR, e.toString(), classs);
+            }
+        }
 
+        if (! classesToGenerate.isEmpty()) {
+            //then generate, format and write the classes (independent of each other) concurrently
+            List<GenerationResult> results = generateAll(classesToGenerate);
 
-                TypeElement classs = (TypeElement) c;
+            //report back in the order in which the classes were found, regardless of which one finished first
+            for (GenerationResult result : results) {
+                for (GenerationMessage message : result.messages) {
+                    messager.printMessage(message.kind, message.text, result.element);
+                }
 
-                String pathToClass = classs.getQualifiedName().toString().replace('.', File.separatorChar);
-                try {
-                    File classFile = new File(CLASSES_PATH_PREFIX + pathToClass + DOT_JAVA);
-                    JavaClassSource javaClass = Roaster.parse(JavaClassSource.class, classFile);
-
-                    //--------------------------------------------------------------------------------------------
-
-                    if (javaClass.hasNestedType(abstractBuilderName(javaClass.getName()))) {
-                        //remove so it can be regenerated - just to be sure all the properties are ok etc.
-                        javaClass.removeNestedType(javaClass.getNestedType(abstractBuilderName(javaClass.getName())));
-                    }
-
-                    //generate the inner class for the abstract builder
-                    //check if the parent of this class is also annotated with this annotation, i.e. will also get a generated
-                    //  builder. if so, add the extension clause to the builder
-                    String extendsAnnotatedClass = "";
-                    String parentClass = classs.getSuperclass().toString();
-                    if (annotatedClasses.contains(parentClass)) {
-                        String parentClassSimpleName = (parentClass.contains(".")) ?
-                                parentClass.substring(parentClass.lastIndexOf(".") + 1) : parentClass;
-                        extendsAnnotatedClass = String.format(EXTENDS_PARENT_CLASS_ABSTRACT_BUILDER, parentClassSimpleName);
-                    }
-
-                    JavaClassSource abstractBuilder = javaClass.addNestedType(
-                            abstractBuilderClassTemplate(javaClass.getName(), extendsAnnotatedClass));
-
-                    String objectOfThisClass = decapitalize(javaClass.getName());
-                    StringBuilder from = new StringBuilder();
-                    StringBuilder fromIgnoreNull = new StringBuilder();
-
-                    if (! extendsAnnotatedClass.isEmpty()) { //if it has a parent
-                        from.append(_super()).append(".").append(_from(OBJECT)).append(lineSeparator()).append(lineSeparator());
-                        fromIgnoreNull.append(_super()).append(".").append(_fromIgnoreNull(OBJECT))
-                                .append(lineSeparator()).append(lineSeparator());
-                    }
-
-                    StringBuilder insideFrom = new StringBuilder();
-                    StringBuilder insideFromIgnoreNull = new StringBuilder();
-
-                    for (FieldSource<JavaClassSource> attribute : javaClass.getFields()) {
-                        //ignore static and final fields
-                        if (attribute.isStatic()) {
-                            messager.printMessage(Diagnostic.Kind.MANDATORY_WARNING, "BuilderGenerator: Ignoring static attribute '" +
-                                    attribute.getName() + "'");
-                            continue;
-                        }
-
-                        if (attribute.isFinal()) {
-                            messager.printMessage(Diagnostic.Kind.MANDATORY_WARNING, "BuilderGenerator: Ignoring final attribute '" +
-                                    attribute.getName() + "'");
-                            continue;
-                        }
-
-
-                        String setterName = _set(attribute.getName());
-
-                        //for each attribute of the parent class, add a setter in this form:
-                        String attributeType = nestedClassesFullTypeToRoasterType.getOrDefault(attribute.getType().getQualifiedName(),
-                                attribute.getType().getQualifiedNameWithGenerics());
-                        abstractBuilder.addMethod()
-                                .setPublic()
-                                .setName(attribute.getName())
-                                .setReturnType("B")
-                                .setBody(GET_OBJ__ + "." + setterName + _return(GET_THIS_BUILDER__))
-                                .addParameter(attributeType, attribute.getName());
-
-                        //for each attribute that is a Collection, add also methods for adding elements
-                        if (isCollection(attribute.getType())) {
-                            abstractBuilder.addMethod()
-                                    .setPublic()
-                                    .setName(ADD_TO + capitalize(attribute.getName()))
-                                    .setReturnType("B")
-                                    .setBody( //TODO instantiate the collection if null
-                                            GET_OBJ__ + "." + _get(attribute.getName()) + "." + _add(attribute.getName() +
-                                                    ELEMENT) + lineSeparator() + _return(GET_THIS_BUILDER__))
-                                    .addParameter(getElementType(attribute.getType()), attribute.getName() + ELEMENT);
-
-                            abstractBuilder.addMethod()
-                                    .setPublic()
-                                    .setName(ADD_ALL_TO + capitalize(attribute.getName()))
-                                    .setReturnType("B")
-                                    .setBody( //TODO instantiate the collection if null
-                                            GET_OBJ__ + "." + _get(attribute.getName()) + "." + _addAll(attribute.getName()) +
-                                                    lineSeparator() + _return(GET_THIS_BUILDER__))
-                                    .addParameter(attribute.getType().getQualifiedNameWithGenerics(), attribute.getName());
-                        }
-
-
-                        //generate parts of methods to set all values from an object of the type being built (or its [sub|super]type)
-                        String setThisAttributeFromGivenObject = GET_OBJ__ + "." + _set(attribute.getName(),
-                                objectOfThisClass + "." + _get(attribute));
-
-                        insideFrom.append(setThisAttributeFromGivenObject);
-
-                        //a very similar method, but ignoring null values
-                        if (! attribute.getType().isPrimitive()) {
-                            insideFromIgnoreNull.append(_if(_notNull(objectOfThisClass + "." + _get(attribute)), setThisAttributeFromGivenObject));
-                        } else {
-                            insideFromIgnoreNull.append(setThisAttributeFromGivenObject);
-                        }
-                    }
-
-
-                    from.append(_if(_instanceof(OBJECT, javaClass.getName()),
-                            javaClass.getName() + " " + objectOfThisClass + " = " + _cast(OBJECT, javaClass.getName()) + ";" +
-                                    insideFrom));
-                    fromIgnoreNull.append(_if(_instanceof(OBJECT, javaClass.getName()),
-                            javaClass.getName() + " " + objectOfThisClass + " = " + _cast(OBJECT, javaClass.getName()) + ";" +
-                                    insideFromIgnoreNull));
-
-
-                    from.append(lineSeparator()).append(_return(GET_THIS_BUILDER__));
-                    abstractBuilder.addMethod()
-                            .setPublic()
-                            .setName(FROM)
-                            .setReturnType("B")
-                            .setBody(from.toString())
-                            .addParameter(Object.class, OBJECT);
-
-                    fromIgnoreNull.append(lineSeparator()).append(_return(GET_THIS_BUILDER__));
-                    abstractBuilder.addMethod()
-                            .setPublic()
-                            .setName(FROM_IGNORE_NULL)
-                            .setReturnType("B")
-                            .setBody(fromIgnoreNull.toString())
-                            .addParameter(Object.class, OBJECT);
-
-
-                    //and these exact three methods (if not inherited from parent):
-                    if (extendsAnnotatedClass.isEmpty()) {
-                        abstractBuilder.addMethod()
-                                .setPublic()
-                                .setAbstract(true)
-                                .setName(BUILD)
-                                .setReturnType("T");
-
-                        abstractBuilder.addMethod()
-                                .setPublic()
-                                .setAbstract(true)
-                                .setName(GET_THIS_BUILDER)
-                                .setReturnType("B");
-
-                        abstractBuilder.addMethod()
-                                .setPublic()
-                                .setAbstract(true)
-                                .setName(GET_OBJ)
-                                .setReturnType("T");
-                    }
-
-                    //add the JavaDoc
-                    JavaDocSource abstractBuilderJavaDoc = abstractBuilder.getJavaDoc();
-                    abstractBuilderJavaDoc.setText(NOTE_GENERATED_CODE);
-
-
-                    //--------------------------------------------------------------------------------------------
-                    generateConcreteBuilder(javaClass);
-
-                    try (BufferedWriter bw = new BufferedWriter(new FileWriter(classFile));
-                         InputStream is = BuilderGeneratorProcessor.class.getClassLoader().getResourceAsStream("options.properties")) {
-                        Properties formattingProperties = new Properties();
-                        formattingProperties.load(is);
-                        bw.write(Roaster.format(formattingProperties, javaClass.toString()));
-                    }
+                if ((cache != null) && (result.outputHash != null)) {
+                    cache.update(result.className, result.sourceHash, result.outputHash);
+                }
+            }
 
+            if (cache != null) {
+                try {
+                    cache.save();
                 } catch (IOException e) {
-                    messager.printMessage(Diagnostic.Kind.ERROR, e.toString());
+                    messager.printMessage(Diagnostic.Kind.WARNING, "BuilderGenerator: Unable to write the cache: " + e);
                 }
             }
+        }
 
-            firstRound = false;
+        stats.addWallTime(System.nanoTime() - start);
+        if (roundEnv.processingOver() && (statsFile != null)) {
+            writeStats();
         }
 
         return true;
     }
 
 
+    private void writeStats() {
+        try {
+            stats.writeJson(statsFile);
+            messager.printMessage(Diagnostic.Kind.NOTE, stats.summary() + "; report written to " + statsFile);
+        } catch (IOException e) {
+            messager.printMessage(Diagnostic.Kind.WARNING, "BuilderGenerator: Unable to write the statistics: " + e);
+        }
+    }
 
-    private void generateConcreteBuilder(JavaClassSource javaClass) {
-        //generate the inner class for the implementation of the abstract builder
-        String concreteBuilderName = concreteBuilderName(javaClass.getName());
-        if (javaClass.hasNestedType(concreteBuilderName)) {
-            //remove so it can be regenerated - just to be sure all the properties are ok etc.
-            javaClass.removeNestedType(javaClass.getNestedType(concreteBuilderName));
+    private ClassSource locate(TypeElement classs, BuilderModel model) throws IOException {
+        String[] builderNames = {model.getAbstractBuilderName(), model.getConcreteBuilderName()};
+        if (trees != null) {
+            return ClassSource.fromCompiler(trees, classs, builderNames);
         }
 
-        //generate the inner class for the concrete builder
-        JavaClassSource concreteBuilder = javaClass.addNestedType(concreteBuilderClassTemplate(javaClass.getName()));
-
-        String createdObjectAttributeName = decapitalize(javaClass.getName());
-        concreteBuilder.addField()
-                .setPrivate()
-                .setName(createdObjectAttributeName)
-                .setType(javaClass.getName())
-                .setLiteralInitializer(_new(javaClass.getName()));
-
-        concreteBuilder.addMethod()
-                .setPublic()
-                .setName(BUILD)
-                .setReturnType(javaClass.getName())
-                .setBody(_return(createdObjectAttributeName))
-                .addAnnotation(Override.class);
-
-        concreteBuilder.addMethod()
-                .setPublic()
-                .setName(GET_THIS_BUILDER)
-                .setReturnType(concreteBuilderName)
-                .setBody(_return(_this()))
-                .addAnnotation(Override.class);
-
-        concreteBuilder.addMethod()
-                .setPublic()
-                .setName(GET_OBJ)
-                .setReturnType(javaClass.getName())
-                .setBody(_return(createdObjectAttributeName))
-                .addAnnotation(Override.class);
-
-        //add the JavaDoc
-        JavaDocSource concreteBuilderJavaDoc = concreteBuilder.getJavaDoc();
-        concreteBuilderJavaDoc.setText(NOTE_GENERATED_CODE);
+        String pathToClass = model.getQualifiedName().replace('.', File.separatorChar);
+        return ClassSource.fromFile(new File(CLASSES_PATH_PREFIX + pathToClass + DOT_JAVA), builderNames);
     }
 
-    private String decapitalize(String className) {
-        return className.substring(0,1).toLowerCase() + (className.length() == 1 ? "" : className.substring(1));
-    }
+    private List<GenerationResult> generateAll(List<ClassToGenerate> classesToGenerate) {
+        int poolSize = Math.min(threads, classesToGenerate.size());
+        if (poolSize <= 1) {
+            return classesToGenerate.stream().map(this::generateOrFail).collect(Collectors.toList());
+        }
 
-    private String concreteBuilderName(String baseClass) {
-        return String.format(CONCRETE_BUILDER_NAME, baseClass);
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "BuilderGenerator-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            List<Future<GenerationResult>> futures = new ArrayList<>();
+            for (ClassToGenerate classToGenerate : classesToGenerate) {
+                futures.add(executor.submit(() -> generateOrFail(classToGenerate)));
+            }
+
+            List<GenerationResult> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(failed(classesToGenerate.get(i), e.getCause().toString()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    results.add(failed(classesToGenerate.get(i), "BuilderGenerator: Interrupted while generating the builders"));
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private String abstractBuilderName(String baseClass) {
-        return String.format(ABSTRACT_BUILDER_NAME, baseClass);
+    /**
+     * Same as {@link #generate(ClassToGenerate)}, but any failure is reported as an error of the class rather than
+     * thrown, whether the classes are generated on this thread or by the pool.
+     */
+    private GenerationResult generateOrFail(ClassToGenerate classToGenerate) {
+        try {
+            return generate(classToGenerate);
+        } catch (RuntimeException e) {
+            return failed(classToGenerate, e.toString());
+        }
     }
 
-    private String concreteBuilderClassTemplate(String baseClass) {
-        return String.format(CONCRETE_BUILDER_CLASS_TEMPLATE, baseClass, baseClass, baseClass, baseClass);
+    private GenerationResult failed(ClassToGenerate classToGenerate, String error) {
+        GenerationResult failed = new GenerationResult(classToGenerate.model.getQualifiedName(), classToGenerate.element);
+        failed.error(error);
+        return failed;
     }
 
-    private String abstractBuilderClassTemplate(String baseClass, String extendsAnnotatedClass) {
-        return String.format(ABSTRACT_BUILDER_CLASS_TEMPLATE, baseClass, baseClass, baseClass, extendsAnnotatedClass);
+    private GenerationResult generate(ClassToGenerate classToGenerate) {
+        BuilderModel model = classToGenerate.model;
+        ClassSource classSource = classToGenerate.source;
+        ProcessingStats.ClassStats classStats = classToGenerate.stats;
+        GenerationResult result = new GenerationResult(model.getQualifiedName(), classToGenerate.element);
+
+        try {
+            String source = classSource.getContent();
+
+            //the generated code depends on the source, on whether the parent gets a builder as well (and with which
+            //  attributes), on the model of the class resolved from the types it uses (e.g. whether an attribute is a
+            //  collection, or its getter inherited from a class not annotated) and on formatting
+            String context = model.getParentAbstractBuilder() + ":" + model.getAnnotatedAncestors() + ":" +
+                    model.getInheritedAttributes() + ":" + model.getAttributes() + ":" + model.getOutput() + ":" +
+                    model.getBuildMode() + ":" + model.isReusable() + ":" + model.isTrackChanges() + ":" +
+                    model.getConstructorArguments() + ":" + (builderFormatter != null);
+            String sourceHash = GeneratedSourceCache.hash(CACHE_VERSION, context, source);
+            if ((cache != null) && cache.isUpToDate(model.getQualifiedName(), sourceHash)) {
+                //nothing to regenerate
+                classStats.upToDate();
+                return result;
+            }
+
+            //only the builders are formatted; the rest of the class is kept exactly as it is
+            long generateStart = System.nanoTime();
+            String builders = builderSourceGenerator.generateNested(model, classStats);
+            classStats.addTime(ProcessingStats.Phase.GENERATE, generateStart);
+            if (builderFormatter != null) {
+                long formatStart = System.nanoTime();
+                builders = builderFormatter.formatMembers(builders);
+                classStats.addTime(ProcessingStats.Phase.FORMAT, formatStart);
+            }
+
+            //do not touch the file (and its timestamp) if the regenerated code is identical
+            long writeStart = System.nanoTime();
+            String output = classSource.withBuilders(builders);
+            if (! output.equals(source)) {
+                writeAtomically(classSource.getFile(), output, classSource.getCharset());
+                classStats.written();
+            }
+            classStats.addTime(ProcessingStats.Phase.WRITE, writeStart);
+
+            result.sourceHash = sourceHash;
+            result.outputHash = GeneratedSourceCache.hash(CACHE_VERSION, context, output);
+
+        } catch (IOException e) {
+            result.error(e.toString());
+        }
+
+        return result;
     }
 
-    private boolean isCollection(Type<JavaClassSource> type) {
+    private void writeAtomically(File file, String content, Charset charset) throws IOException {
+        //write to a temporary file next to the target first, so that the class is never left half-written
+        Path target = file.toPath();
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), file.getName(), ".tmp");
         try {
-            Class c = Class.forName(type.getQualifiedName());
-            return Collection.class.isAssignableFrom(c);
-        } catch (ClassNotFoundException e) {
-            return false;
+            Files.write(temp, content.getBytes(charset));
+            try {
+                //temporary files are created as owner-only, keep the permissions of the original file
+                Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(target));
+            } catch (UnsupportedOperationException e) {
+                //not a POSIX file system; nothing to preserve
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
         }
     }
 
-    private String getElementType(Type<JavaClassSource> type) {
-        return type.getTypeArguments().isEmpty() ? Object.class.getCanonicalName()
-                : type.getTypeArguments().get(0).getQualifiedNameWithGenerics();
+    private static class ClassToGenerate {
+        //only to report the messages on the processing thread; never touched by the workers
+        private final TypeElement element;
+        private final BuilderModel model;
+        private final ClassSource source;
+        private final ProcessingStats.ClassStats stats;
+
+        private ClassToGenerate(TypeElement element, BuilderModel model, ClassSource source,
+                                ProcessingStats.ClassStats stats) {
+            this.element = element;
+            this.model = model;
+            this.source = source;
+            this.stats = stats;
+        }
     }
 
-    private static String _from(String object) {
-        return FROM + "(" + object + ");";
+    private static class GenerationResult {
+        private final String className;
+        private final TypeElement element;
+        private final List<GenerationMessage> messages = new ArrayList<>();
+        private String sourceHash;
+        private String outputHash;
+
+        private GenerationResult(String className, TypeElement element) {
+            this.className = className;
+            this.element = element;
+        }
+
+        private void error(String text) {
+            messages.add(new GenerationMessage(Diagnostic.Kind.ERROR, text));
+        }
     }
 
-    private static String _fromIgnoreNull(String object) {
-        return FROM_IGNORE_NULL + "(" + object + ");";
+    private static class GenerationMessage {
+        private final Diagnostic.Kind kind;
+        private final String text;
+
+        private GenerationMessage(Diagnostic.Kind kind, String text) {
+            this.kind = kind;
+            this.text = text;
+        }
     }
 
 }
@@ -0,0 +1,110 @@
+package me.deadcode.adka.buildergen;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static me.deadcode.adka.buildergen.BuilderGeneratorProcessor.ABSTRACT_BUILDER_NAME;
+
+/**
+ * Index of the classes that get a generated builder, telling how the builders of each class were generated. The
+ * annotation of a class compiled in another module does not tell it all (e.g. the output may have been set by a
+ * processor option of that module), so the builders of such a class are looked up among its compiled members and in
+ * its package instead.
+ *
+ * Only the compiler's model is used, no resources on the classpath, which incremental compilation would not know
+ * about. Must be used on the processing thread only.
+ */
+public class BuilderIndex {
+
+    private final Elements elements;
+
+    //the classes of this compilation and the ones already looked up, including the ones whose builders were not found
+    private final Map<String, Optional<Entry>> entries = new HashMap<>();
+
+    public BuilderIndex(Elements elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * Registers a class of this compilation; takes precedence over any builders of the class already compiled (e.g.
+     * left from the previous build).
+     */
+    public void add(Entry entry) {
+        entries.put(entry.className, Optional.of(entry));
+    }
+
+    /**
+     * @return the entry of the given annotated class, either of this compilation or of its compiled builders;
+     * {@code null} if no builders of the class are found
+     */
+    public Entry find(TypeElement annotatedClass) {
+        return entries.computeIfAbsent(annotatedClass.getQualifiedName().toString(),
+                name -> Optional.ofNullable(load(annotatedClass))).orElse(null);
+    }
+
+    private Entry load(TypeElement annotatedClass) {
+        String className = annotatedClass.getQualifiedName().toString();
+        String abstractBuilderName = String.format(ABSTRACT_BUILDER_NAME, annotatedClass.getSimpleName());
+        GenerateBuilder.BuildMode buildMode = annotatedClass.getAnnotation(GenerateBuilder.class).buildMode();
+
+        //the nested builders are members of the class itself
+        for (TypeElement member : ElementFilter.typesIn(annotatedClass.getEnclosedElements())) {
+            if (member.getSimpleName().contentEquals(abstractBuilderName)) {
+                return new Entry(className, GenerateBuilder.Output.NESTED, buildMode,
+                        member.getQualifiedName().toString());
+            }
+        }
+
+        //the separate ones are in the same package
+        String packageName = elements.getPackageOf(annotatedClass).getQualifiedName().toString();
+        TypeElement abstractBuilder = elements.getTypeElement((packageName.isEmpty() ? "" : packageName + ".") +
+                abstractBuilderName);
+        if (abstractBuilder != null) {
+            return new Entry(className, GenerateBuilder.Output.SEPARATE, buildMode,
+                    abstractBuilder.getQualifiedName().toString());
+        }
+        return null;
+    }
+
+    public static class Entry {
+        private final String className;
+        private final GenerateBuilder.Output output;
+        private final GenerateBuilder.BuildMode buildMode;
+        private final String abstractBuilder;
+
+        /**
+         * @param output the actual output, i.e. never {@link GenerateBuilder.Output#DEFAULT}
+         * @param abstractBuilder the qualified name of the abstract builder (without the type parameters)
+         */
+        public Entry(String className, GenerateBuilder.Output output, GenerateBuilder.BuildMode buildMode,
+                     String abstractBuilder) {
+            this.className = className;
+            this.output = output;
+            this.buildMode = buildMode;
+            this.abstractBuilder = abstractBuilder;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public GenerateBuilder.Output getOutput() {
+            return output;
+        }
+
+        public GenerateBuilder.BuildMode getBuildMode() {
+            return buildMode;
+        }
+
+        public String getAbstractBuilder() {
+            return abstractBuilder;
+        }
+    }
+
+}
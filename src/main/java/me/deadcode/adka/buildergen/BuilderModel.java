@@ -0,0 +1,155 @@
+package me.deadcode.adka.buildergen;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static me.deadcode.adka.buildergen.BuilderGeneratorProcessor.ABSTRACT_BUILDER_NAME;
+import static me.deadcode.adka.buildergen.BuilderGeneratorProcessor.CONCRETE_BUILDER_NAME;
+
+/**
+ * Everything needed to generate the builders of an annotated class.
+ * Immutable snapshot of the compiler's model, so it can be used outside of the processing thread.
+ */
+public class BuilderModel {
+
+    private final String qualifiedName;
+    private final String simpleName;
+    private final String packageName;
+    private final GenerateBuilder.Output output;
+    private final GenerateBuilder.BuildMode buildMode;
+    private final boolean reusable;
+    private final boolean trackChanges;
+    private final String parentAbstractBuilder;
+    private final List<String> annotatedAncestors;
+    private final List<AttributeModel> attributes;
+    private final List<AttributeModel> inheritedAttributes;
+    private final List<String> constructorArguments;
+
+    public BuilderModel(String qualifiedName, String simpleName, String packageName, GenerateBuilder.Output output,
+                        GenerateBuilder.BuildMode buildMode, boolean reusable, boolean trackChanges,
+                        String parentAbstractBuilder, List<String> annotatedAncestors, List<AttributeModel> attributes,
+                        List<AttributeModel> inheritedAttributes,
+                        List<String> constructorArguments) {
+        this.qualifiedName = qualifiedName;
+        this.simpleName = simpleName;
+        this.packageName = packageName;
+        this.output = output;
+        this.buildMode = buildMode;
+        this.reusable = reusable;
+        this.trackChanges = trackChanges;
+        this.parentAbstractBuilder = parentAbstractBuilder;
+        this.annotatedAncestors = Collections.unmodifiableList(annotatedAncestors);
+        this.attributes = Collections.unmodifiableList(attributes);
+        this.inheritedAttributes = Collections.unmodifiableList(inheritedAttributes);
+        this.constructorArguments = (constructorArguments == null) ? null :
+                Collections.unmodifiableList(constructorArguments);
+    }
+
+    public String getQualifiedName() {
+        return qualifiedName;
+    }
+
+    public String getSimpleName() {
+        return simpleName;
+    }
+
+    /**
+     * @return the package of the class, empty for the default package
+     */
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public GenerateBuilder.Output getOutput() {
+        return output;
+    }
+
+    public GenerateBuilder.BuildMode getBuildMode() {
+        return buildMode;
+    }
+
+    /**
+     * @return whether the builder keeps the values in its own fields and passes them to a constructor on build
+     */
+    public boolean isConstructorMode() {
+        return buildMode == GenerateBuilder.BuildMode.CONSTRUCTOR;
+    }
+
+    /**
+     * @return whether the concrete builder can be reset and reused, see {@link GenerateBuilder#reusable()}
+     */
+    public boolean isReusable() {
+        return reusable;
+    }
+
+    /**
+     * @return whether the builders keep track of the attributes given to them, see {@link GenerateBuilder#trackChanges()}
+     */
+    public boolean isTrackChanges() {
+        return trackChanges;
+    }
+
+    public boolean hasParent() {
+        return parentAbstractBuilder != null;
+    }
+
+    /**
+     * @return the abstract builder of the parent class as it should be referenced in the extends clause,
+     * {@code null} if the parent class is not annotated
+     */
+    public String getParentAbstractBuilder() {
+        return parentAbstractBuilder;
+    }
+
+    /**
+     * @return the qualified names of the annotated superclasses (up to the first one not annotated), starting with the
+     * direct parent; empty if the parent class is not annotated
+     */
+    public List<String> getAnnotatedAncestors() {
+        return annotatedAncestors;
+    }
+
+    /**
+     * @return the attributes declared in the class itself
+     */
+    public List<AttributeModel> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * @return the attributes of all the annotated superclasses (up to the first one not annotated), starting with
+     * the topmost one; empty if the parent class is not annotated
+     */
+    public List<AttributeModel> getInheritedAttributes() {
+        return inheritedAttributes;
+    }
+
+    /**
+     * @return the inherited attributes followed by the attributes declared in the class itself
+     */
+    public List<AttributeModel> getAllAttributes() {
+        List<AttributeModel> allAttributes = new ArrayList<>(inheritedAttributes);
+        allAttributes.addAll(attributes);
+        return allAttributes;
+    }
+
+    /**
+     * @return the names of the attributes in the order in which they are passed to the constructor,
+     * {@code null} unless in the constructor build mode
+     */
+    public List<String> getConstructorArguments() {
+        return constructorArguments;
+    }
+
+    public String getAbstractBuilderName() {
+        return String.format(ABSTRACT_BUILDER_NAME, simpleName);
+    }
+
+    public String getConcreteBuilderName() {
+        return String.format(CONCRETE_BUILDER_NAME, simpleName);
+    }
+
+}
@@ -0,0 +1,329 @@
+package me.deadcode.adka.buildergen;
+
+import me.deadcode.adka.buildergen.annotation.BuilderConstructor;
+import me.deadcode.adka.buildergen.annotation.ExpectedSize;
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static me.deadcode.adka.buildergen.BuilderGeneratorProcessor.ABSTRACT_BUILDER_NAME;
+import static me.deadcode.adka.buildergen.BuilderGeneratorProcessor.FROM;
+import static me.deadcode.adka.buildergen.BuilderGeneratorProcessor.FROM_IGNORE_NULL;
+import static me.deadcode.adka.buildergen.JavaElements.capitalize;
+
+/**
+ * Creates the {@link BuilderModel} of an annotated class from the compiler's model of the class, i.e. without parsing
+ * its source again. Must be used on the processing thread only.
+ */
+public class BuilderModelFactory {
+
+    private final ProcessingEnvironment processingEnv;
+    private final Messager messager;
+    private final GenerateBuilder.Output defaultOutput;
+    private final TypeResolver typeResolver;
+    private final ProcessingStats stats;
+    private final BuilderIndex builderIndex;
+
+    //the attributes of a class are needed also for each of its annotated subclasses; the warnings are reported once
+    private final Map<String, List<AttributeModel>> attributesByClass = new HashMap<>();
+
+    public BuilderModelFactory(ProcessingEnvironment processingEnv, GenerateBuilder.Output defaultOutput,
+                               ProcessingStats stats, BuilderIndex builderIndex) {
+        this.processingEnv = processingEnv;
+        this.messager = processingEnv.getMessager();
+        this.defaultOutput = defaultOutput;
+        this.stats = stats;
+        this.builderIndex = builderIndex;
+        this.typeResolver = new TypeResolver(processingEnv);
+    }
+
+    public GenerateBuilder.Output outputOf(TypeElement classs) {
+        GenerateBuilder.Output output = classs.getAnnotation(GenerateBuilder.class).output();
+        return (output == GenerateBuilder.Output.DEFAULT) ? defaultOutput : output;
+    }
+
+    public GenerateBuilder.BuildMode buildModeOf(TypeElement classs) {
+        return classs.getAnnotation(GenerateBuilder.class).buildMode();
+    }
+
+    /**
+     * @return whether a builder is generated for the given class, i.e. whether it is an annotated top-level class
+     * (regardless of whether it is being compiled or already compiled, e.g. in another module)
+     */
+    public boolean hasBuilder(TypeElement classs) {
+        return (classs.getAnnotation(GenerateBuilder.class) != null) && (classs.getKind() == ElementKind.CLASS) &&
+                (classs.getEnclosingElement().getKind() == ElementKind.PACKAGE);
+    }
+
+    /**
+     * @return the index entry of the given annotated class of this compilation
+     */
+    public BuilderIndex.Entry indexEntryOf(TypeElement classs) {
+        GenerateBuilder.Output output = outputOf(classs);
+        String abstractBuilderName = String.format(ABSTRACT_BUILDER_NAME, classs.getSimpleName());
+        String packageName = processingEnv.getElementUtils().getPackageOf(classs).getQualifiedName().toString();
+        String abstractBuilder = (output == GenerateBuilder.Output.NESTED) ?
+                classs.getQualifiedName() + "." + abstractBuilderName :
+                (packageName.isEmpty() ? "" : packageName + ".") + abstractBuilderName;
+        return new BuilderIndex.Entry(classs.getQualifiedName().toString(), output, buildModeOf(classs), abstractBuilder);
+    }
+
+    private BuilderIndex.Entry entryOf(TypeElement annotatedClass) {
+        //classes from other modules were generated according to their options, not the ones of this compilation
+        BuilderIndex.Entry entry = builderIndex.find(annotatedClass);
+        return (entry != null) ? entry : indexEntryOf(annotatedClass);
+    }
+
+    /**
+     * @param classs the annotated class
+     * @return the model, or {@code null} if no builder can be generated for the class (the reason has been reported)
+     */
+    public BuilderModel create(TypeElement classs) {
+        GenerateBuilder.Output output = outputOf(classs);
+        GenerateBuilder.BuildMode buildMode = buildModeOf(classs);
+        String packageName = processingEnv.getElementUtils().getPackageOf(classs).getQualifiedName().toString();
+
+        //the builders of a hierarchy either all set the values on the object, or all pass them to a constructor
+        TypeElement parent = superclassOf(classs);
+        if ((parent != null) && hasBuilder(parent) && (entryOf(parent).getBuildMode() != buildMode)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "BuilderGenerator: The build mode of '" +
+                    classs.getQualifiedName() + "' differs from the one of its parent '" + parent.getQualifiedName() + "'",
+                    classs);
+            return null;
+        }
+
+        //the changes are tracked by all the builders of a hierarchy together, and applied by the setters
+        boolean trackChanges = classs.getAnnotation(GenerateBuilder.class).trackChanges();
+        if (trackChanges && (buildMode == GenerateBuilder.BuildMode.CONSTRUCTOR)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "BuilderGenerator: Tracking the changes of '" +
+                    classs.getQualifiedName() + "' is not supported in the " + buildMode + " build mode", classs);
+            return null;
+        }
+        if ((parent != null) && hasBuilder(parent) &&
+                (parent.getAnnotation(GenerateBuilder.class).trackChanges() != trackChanges)) {
+            messager.printMessage(Diagnostic.Kind.ERROR, "BuilderGenerator: '" + classs.getQualifiedName() +
+                    "' must track the changes if and only if its parent '" + parent.getQualifiedName() + "' does",
+                    classs);
+            return null;
+        }
+
+        List<AttributeModel> attributes = attributes(classs);
+        List<TypeElement> annotatedAncestors = annotatedAncestors(classs);
+        List<AttributeModel> inheritedAttributes = inheritedAttributes(annotatedAncestors);
+
+        List<String> constructorArguments = null;
+        if (buildMode == GenerateBuilder.BuildMode.CONSTRUCTOR) {
+            List<AttributeModel> allAttributes = new ArrayList<>(inheritedAttributes);
+            allAttributes.addAll(attributes);
+            constructorArguments = constructorArguments(classs, allAttributes);
+            if (constructorArguments == null) {
+                return null;
+            }
+        }
+
+        return new BuilderModel(classs.getQualifiedName().toString(), classs.getSimpleName().toString(), packageName,
+                output, buildMode, classs.getAnnotation(GenerateBuilder.class).reusable(), trackChanges,
+                parentAbstractBuilder(classs, output), annotatedAncestors.stream()
+                        .map(ancestor -> ancestor.getQualifiedName().toString()).collect(Collectors.toList()),
+                attributes, inheritedAttributes, constructorArguments);
+    }
+
+    private List<String> constructorArguments(TypeElement classs, List<AttributeModel> attributes) {
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(classs.getEnclosedElements());
+
+        //the explicitly chosen constructor, if any
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getAnnotation(BuilderConstructor.class) != null) {
+                List<String> arguments = constructorArguments(constructor, attributes);
+                if (arguments == null) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, "BuilderGenerator: The constructor annotated with " +
+                            "@BuilderConstructor must take all the attributes, named after them", constructor);
+                }
+                return arguments;
+            }
+        }
+
+        for (ExecutableElement constructor : constructors) {
+            List<String> arguments = constructorArguments(constructor, attributes);
+            if (arguments != null) {
+                return arguments;
+            }
+        }
+
+        messager.printMessage(Diagnostic.Kind.ERROR, "BuilderGenerator: No constructor taking all the attributes " +
+                "found in '" + classs.getQualifiedName() + "'", classs);
+        return null;
+    }
+
+    private List<String> constructorArguments(ExecutableElement constructor, List<AttributeModel> attributes) {
+        List<? extends VariableElement> parameters = constructor.getParameters();
+        if (parameters.size() != attributes.size()) {
+            return null;
+        }
+
+        //the parameters named after the attributes, in any order
+        Set<String> attributeNames = new HashSet<>();
+        attributes.forEach(attribute -> attributeNames.add(attribute.getName()));
+        List<String> arguments = new ArrayList<>();
+        for (VariableElement parameter : parameters) {
+            arguments.add(parameter.getSimpleName().toString());
+        }
+        if (attributeNames.equals(new HashSet<>(arguments))) {
+            return arguments;
+        }
+
+        //the parameter names are not always known (e.g. compiled without -parameters), so the order of the types
+        //  matching the order of the attributes will do as well
+        for (int i = 0; i < parameters.size(); i++) {
+            if (! parameters.get(i).asType().toString().equals(attributes.get(i).getType())) {
+                return null;
+            }
+        }
+        arguments.clear();
+        attributes.forEach(attribute -> arguments.add(attribute.getName()));
+        return arguments;
+    }
+
+    /**
+     * @return the annotated superclasses (up to the first one not annotated), from the direct parent up
+     */
+    private List<TypeElement> annotatedAncestors(TypeElement classs) {
+        List<TypeElement> ancestors = new ArrayList<>();
+        TypeElement ancestor = superclassOf(classs);
+        while ((ancestor != null) && hasBuilder(ancestor)) {
+            ancestors.add(ancestor);
+            ancestor = superclassOf(ancestor);
+        }
+        return ancestors;
+    }
+
+    private List<AttributeModel> inheritedAttributes(List<TypeElement> annotatedAncestors) {
+        //the topmost one first
+        List<AttributeModel> inheritedAttributes = new ArrayList<>();
+        for (int i = annotatedAncestors.size() - 1; i >= 0; i--) {
+            inheritedAttributes.addAll(attributes(annotatedAncestors.get(i)));
+        }
+        return inheritedAttributes;
+    }
+
+    private TypeElement superclassOf(TypeElement classs) {
+        return (classs.getSuperclass().getKind() == TypeKind.DECLARED) ?
+                (TypeElement) processingEnv.getTypeUtils().asElement(classs.getSuperclass()) : null;
+    }
+
+    private String parentAbstractBuilder(TypeElement classs, GenerateBuilder.Output output) {
+        //check if the parent of this class is also annotated with this annotation, i.e. will also get a generated
+        //  builder. if so, its abstract builder is extended by the abstract builder of this class
+        TypeElement parent = superclassOf(classs);
+        if ((parent == null) || ! hasBuilder(parent)) {
+            return null;
+        }
+
+        BuilderIndex.Entry parentEntry = entryOf(parent);
+        if ((parentEntry.getOutput() == GenerateBuilder.Output.NESTED) && (output == GenerateBuilder.Output.NESTED)) {
+            //nested builders of the parent are inherited by this class, so the simple name will do there
+            return String.format(ABSTRACT_BUILDER_NAME, parent.getSimpleName());
+        }
+        return parentEntry.getAbstractBuilder();
+    }
+
+    private List<AttributeModel> attributes(TypeElement classs) {
+        return attributesByClass.computeIfAbsent(classs.getQualifiedName().toString(), name -> createAttributes(classs));
+    }
+
+    private List<AttributeModel> createAttributes(TypeElement classs) {
+        boolean constructorMode = buildModeOf(classs) == GenerateBuilder.BuildMode.CONSTRUCTOR;
+
+        //all methods, including the inherited ones, by name
+        Map<String, List<ExecutableElement>> methods = new HashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(classs))) {
+            methods.computeIfAbsent(method.getSimpleName().toString(), name -> new ArrayList<>()).add(method);
+        }
+
+        List<AttributeModel> attributes = new ArrayList<>();
+        for (VariableElement attribute : ElementFilter.fieldsIn(classs.getEnclosedElements())) {
+            String name = attribute.getSimpleName().toString();
+
+            //ignore static and final fields
+            if (attribute.getModifiers().contains(Modifier.STATIC)) {
+                messager.printMessage(Diagnostic.Kind.MANDATORY_WARNING, "BuilderGenerator: Ignoring static attribute '" +
+                        name + "'", attribute);
+                stats.skippedStaticFields++;
+                continue;
+            }
+
+            if (! constructorMode && attribute.getModifiers().contains(Modifier.FINAL)) {
+                messager.printMessage(Diagnostic.Kind.MANDATORY_WARNING, "BuilderGenerator: Ignoring final attribute '" +
+                        name + "'", attribute);
+                stats.skippedFinalFields++;
+                continue;
+            }
+
+            TypeMirror type = attribute.asType();
+
+            //no setters needed when passing the values to the constructor
+            String setter = constructorMode ? null : "set" + capitalize(name);
+            if (! constructorMode && ! hasMethod(methods, setter, 1)) {
+                messager.printMessage(Diagnostic.Kind.MANDATORY_WARNING, "BuilderGenerator: Ignoring attribute '" +
+                        name + "' without a setter", attribute);
+                stats.skippedFieldsWithoutSetter++;
+                continue;
+            }
+
+            //prefer the getter actually present; the standard naming conventions otherwise
+            String getter = "get" + capitalize(name);
+            if ((isBoolean(type) || ! hasMethod(methods, getter, 0)) && hasMethod(methods, "is" + capitalize(name), 0)) {
+                getter = "is" + capitalize(name);
+            }
+            if (! hasMethod(methods, getter, 0)) {
+                //the value cannot be read from another object, nor from the object being built by the setters
+                messager.printMessage(Diagnostic.Kind.MANDATORY_WARNING, "BuilderGenerator: Attribute '" + name +
+                        "' without a getter is not copied by " + FROM + "/" + FROM_IGNORE_NULL +
+                        (constructorMode ? "" : ", and can only be set as a whole"), attribute);
+                getter = null;
+            }
+
+            //adding elements needs the current value, which the builder keeps itself in the constructor mode
+            boolean readable = constructorMode || (getter != null);
+            boolean collection = readable && typeResolver.isCollection(type);
+            boolean array = readable && (type.getKind() == TypeKind.ARRAY);
+            TypeMirror componentType = array ? ((ArrayType) type).getComponentType() : null;
+
+            String elementType = collection ? typeResolver.getElementType(type) :
+                    (array ? componentType.toString() : null);
+            String implementationType = collection ? typeResolver.getImplementationType(type) :
+                    (array ? processingEnv.getTypeUtils().erasure(componentType).toString() : null);
+
+            ExpectedSize expectedSize = attribute.getAnnotation(ExpectedSize.class);
+            attributes.add(new AttributeModel(name, type.toString(), type.getKind().isPrimitive(), collection, array,
+                    elementType, implementationType,
+                    (expectedSize != null) ? expectedSize.value() : classs.getAnnotation(GenerateBuilder.class).expectedSize(),
+                    getter, setter));
+        }
+
+        return attributes;
+    }
+
+    private boolean hasMethod(Map<String, List<ExecutableElement>> methods, String name, int parameters) {
+        return methods.getOrDefault(name, Collections.emptyList()).stream()
+                .anyMatch(method -> method.getParameters().size() == parameters);
+    }
+
+    private boolean isBoolean(TypeMirror type) {
+        return (type.getKind() == TypeKind.BOOLEAN) || type.toString().equals(Boolean.class.getCanonicalName());
+    }
+
+}
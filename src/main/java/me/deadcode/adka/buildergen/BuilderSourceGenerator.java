@@ -0,0 +1,662 @@
+package me.deadcode.adka.buildergen;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+import javax.annotation.processing.Filer;
+import javax.lang.model.element.Element;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.*;
+
+import static me.deadcode.adka.buildergen.BuilderGeneratorProcessor.*;
+import static me.deadcode.adka.buildergen.JavaElements.*;
+
+/**
+ * Generates the source of the builders of a class from its {@link BuilderModel}, either as classes nested in the
+ * annotated class or as separate top-level classes written via the {@link Filer}.
+ */
+public class BuilderSourceGenerator {
+
+    //collections whose capacity can be given to their constructor, by the number of elements or by the number of
+    //  elements divided by the load factor
+    private static final Collection<String> SIZED_COLLECTIONS = Arrays.asList(ArrayList.class.getCanonicalName(),
+            ArrayDeque.class.getCanonicalName(), Vector.class.getCanonicalName());
+    private static final Collection<String> HASHED_COLLECTIONS = Arrays.asList(HashSet.class.getCanonicalName(),
+            LinkedHashSet.class.getCanonicalName());
+    //collections copied by their copy constructor, keeping also the comparator of sorted ones
+    private static final Collection<String> COPYABLE_COLLECTIONS = Arrays.asList(ArrayList.class.getCanonicalName(),
+            LinkedList.class.getCanonicalName(), HashSet.class.getCanonicalName(),
+            LinkedHashSet.class.getCanonicalName(), TreeSet.class.getCanonicalName(), ArrayDeque.class.getCanonicalName(),
+            Vector.class.getCanonicalName(), PriorityQueue.class.getCanonicalName());
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+    private static final int DEFAULT_ARRAY_CAPACITY = 10;
+
+    private static final String LOCAL_BUILDERS = "LOCAL_BUILDERS";
+    private static final String BUILT = "built";
+    private static final String EXISTING = "existing";
+    private static final String FIELDS = "fields";
+    private static final String COPY = "copy";
+
+    private static final String[] NOTE_GENERATED_CODE = {"Note: generated code. All changes will be undone on the next build as",
+            "long as the enclosing class is annotated with @GenerateBuilder."};
+    private static final String[] NOTE_GENERATED_SOURCE = {"Note: generated code. All changes will be undone on the next build as",
+            "long as %s is annotated with @GenerateBuilder."};
+
+    /**
+     * @return the source of both builders, indented to be placed directly inside the annotated class
+     */
+    public String generateNested(BuilderModel model, ProcessingStats.ClassStats stats) {
+        StringWriter writer = new StringWriter();
+        JavaSourceWriter source = new JavaSourceWriter(writer, 1);
+        try {
+            generateAbstractBuilder(model, source);
+            source.emptyLine();
+            generateConcreteBuilder(model, source);
+        } catch (IOException e) {
+            //never thrown by a StringWriter
+            throw new UncheckedIOException(e);
+        }
+        stats.addMethods(source.getMethods());
+        return writer.toString();
+    }
+
+    /**
+     * Writes both builders as top-level classes in the package of the annotated class.
+     */
+    public void generateSeparate(BuilderModel model, Filer filer, Element originatingElement,
+                                 ProcessingStats.ClassStats stats) throws IOException {
+        try (Writer writer = filer.createSourceFile(qualified(model, model.getAbstractBuilderName()),
+                originatingElement).openWriter()) {
+            JavaSourceWriter source = new JavaSourceWriter(writer);
+            packageDeclaration(source, model.getPackageName());
+            generateAbstractBuilder(model, source);
+            stats.addMethods(source.getMethods());
+        }
+
+        try (Writer writer = filer.createSourceFile(qualified(model, model.getConcreteBuilderName()),
+                originatingElement).openWriter()) {
+            JavaSourceWriter source = new JavaSourceWriter(writer);
+            packageDeclaration(source, model.getPackageName());
+            generateConcreteBuilder(model, source);
+            stats.addMethods(source.getMethods());
+        }
+    }
+
+    private void generateAbstractBuilder(BuilderModel model, JavaSourceWriter source) throws IOException {
+        String className = model.getSimpleName();
+        String abstractBuilderName = model.getAbstractBuilderName();
+
+        source.javaDoc(note(model));
+        source.beginBlock("public " + (isNested(model) ? "static " : "") + "abstract class " + abstractBuilderName +
+                "<T extends " + className + ", B extends " + abstractBuilderName + "<T, B>>" +
+                (model.hasParent() ? " extends " + model.getParentAbstractBuilder() + "<T, B>" : ""));
+
+        //the values to be passed to the constructor (the ones of the superclasses are kept by the parent builders)
+        if (model.isConstructorMode() && ! model.getAttributes().isEmpty()) {
+            source.emptyLine();
+            for (AttributeModel attribute : model.getAttributes()) {
+                source.line("protected " + attribute.getType() + " " + attribute.getName() + ";");
+            }
+            //the collections are handed over to the object on build, and copied if the builder adds any more elements
+            //  afterwards; the same goes for the collections given to the builder, owned by the caller or another object
+            for (AttributeModel attribute : model.getAttributes()) {
+                if (isOwnCollection(model, attribute)) {
+                    source.line("protected boolean " + attribute.getName() + SHARED + ";");
+                }
+            }
+        }
+
+        //the elements added to arrays are collected in buffers, growing as needed, and assigned on build
+        if (hasArrays(model.getAttributes())) {
+            source.emptyLine();
+            for (AttributeModel attribute : model.getAttributes()) {
+                if (attribute.isArray()) {
+                    source.line("protected " + attribute.getType() + " " + attribute.getName() + BUFFER + ";");
+                    source.line("protected int " + attribute.getName() + BUFFER_SIZE + ";");
+                }
+            }
+        }
+
+        //the attributes given to the builders of the whole hierarchy, one bit each in the order of all the attributes;
+        //  each builder declares the words not declared by its parents
+        if (model.isTrackChanges()) {
+            int inheritedWords = words(model.getInheritedAttributes().size());
+            int words = words(model.getAllAttributes().size());
+            if (words > inheritedWords) {
+                source.emptyLine();
+                for (int word = inheritedWords; word < words; word++) {
+                    source.line("protected long " + CHANGES + word + ";");
+                }
+            }
+        }
+
+        for (AttributeModel attribute : model.getAttributes()) {
+            String name = attribute.getName();
+
+            source.emptyLine();
+            source.beginMethod("public B " + name + "(" + attribute.getType() + " " + name + ")");
+            writeAssign(model, attribute, name, source);
+            source.line(statement(_return(GET_THIS_BUILDER__)))
+                    .endBlock();
+
+            //for each attribute that is a Collection, add also methods for adding elements; the collection is created
+            //  on demand (the builder's own collections in the constructor mode always are)
+            if (attribute.isCollection() && (! model.isConstructorMode() || (attribute.getImplementationType() != null))) {
+                source.emptyLine();
+                source.beginMethod("public B " + ADD_TO + capitalize(name) + "(" + attribute.getElementType() + " " +
+                        name + ELEMENT + ")");
+                createCollection(model, attribute, source, capacity(attribute, null));
+                source.line(value(model, attribute) + "." + _add(name + ELEMENT));
+                writeChanged(model, attribute, source);
+                source.line(statement(_return(GET_THIS_BUILDER__)))
+                        .endBlock();
+
+                //sized for all the given elements at once
+                source.emptyLine();
+                source.beginMethod("public B " + ADD_ALL_TO + capitalize(name) + "(" + attribute.getType() + " " + name + ")");
+                createCollection(model, attribute, source, capacity(attribute, name + ".size()"));
+                source.line(value(model, attribute) + "." + _addAll(name));
+                writeChanged(model, attribute, source);
+                source.line(statement(_return(GET_THIS_BUILDER__)))
+                        .endBlock();
+            }
+
+            if (attribute.isArray()) {
+                generateArrayMethods(model, attribute, source);
+            }
+        }
+
+        //methods to set all values from an object of the type being built (or its subtype), or of any other type
+        generateFrom(model, source, FROM, false);
+        generateFrom(model, source, FROM_IGNORE_NULL, true);
+
+        if (hasArrays(model.getAttributes())) {
+            generateFillArrays(model, source);
+        }
+
+        if (model.isTrackChanges()) {
+            generateApplyTo(model, source);
+            generateChangedFields(model, source);
+        }
+
+        //and these exact three methods (if not inherited from parent; no object to get in the constructor mode):
+        if (! model.hasParent()) {
+            source.emptyLine();
+            source.abstractMethod("public abstract T " + BUILD + "()");
+            source.emptyLine();
+            source.abstractMethod("public abstract B " + GET_THIS_BUILDER + "()");
+            if (! model.isConstructorMode()) {
+                source.emptyLine();
+                source.abstractMethod("public abstract T " + GET_OBJ + "()");
+            }
+        }
+
+        source.endBlock();
+    }
+
+    private void generateFrom(BuilderModel model, JavaSourceWriter source, String methodName, boolean ignoreNull)
+            throws IOException {
+        String className = model.getSimpleName();
+        String objectOfThisClass = decapitalize(className);
+
+        //typed variant copying the attributes of the whole annotated hierarchy at once, without any type checks
+        source.emptyLine();
+        source.beginMethod("public B " + methodName + "(" + className + " " + objectOfThisClass + ")");
+        for (AttributeModel attribute : model.getAllAttributes()) {
+            if (attribute.getGetter() == null) {
+                continue;
+            }
+
+            String getFromGivenObject = objectOfThisClass + "." + attribute.getGetter() + "()";
+
+            //a very similar method, but ignoring null values
+            if (ignoreNull && ! attribute.isPrimitive()) {
+                source.beginBlock("if (" + _notNull(getFromGivenObject) + ")");
+                writeAssign(model, attribute, getFromGivenObject, source);
+                source.endBlock();
+            } else {
+                writeAssign(model, attribute, getFromGivenObject, source);
+            }
+        }
+        source.line(statement(_return(GET_THIS_BUILDER__)));
+        source.endBlock();
+
+        //untyped variant only dispatching to the typed variant of the most specific annotated class of the object
+        source.emptyLine();
+        source.beginMethod("public B " + methodName + "(" + Object.class.getCanonicalName() + " " + OBJECT + ")");
+        source.beginBlock("if (" + _instanceof(OBJECT, className) + ")")
+                .line(statement(_return(methodName + "(" + _cast(OBJECT, className) + ")")))
+                .endBlock();
+        source.line(statement(_return(model.hasParent() ? _super() + "." + methodName + "(" + OBJECT + ")" :
+                GET_THIS_BUILDER__)));
+        source.endBlock();
+
+        //the typed variants of the ancestors may be given an object of this class as well, as the untyped one
+        for (String ancestor : model.getAnnotatedAncestors()) {
+            String objectOfAncestor = decapitalize(ancestor.substring(ancestor.lastIndexOf('.') + 1));
+            source.emptyLine();
+            source.line("@Override");
+            source.beginMethod("public B " + methodName + "(" + ancestor + " " + objectOfAncestor + ")");
+            source.beginBlock("if (" + _instanceof(objectOfAncestor, className) + ")")
+                    .line(statement(_return(methodName + "(" + _cast(objectOfAncestor, className) + ")")))
+                    .endBlock();
+            source.line(statement(_return(_super() + "." + methodName + "(" + objectOfAncestor + ")")));
+            source.endBlock();
+        }
+    }
+
+    private void generateConcreteBuilder(BuilderModel model, JavaSourceWriter source) throws IOException {
+        String className = model.getSimpleName();
+        String concreteBuilderName = model.getConcreteBuilderName();
+        String createdObjectAttributeName = decapitalize(className);
+
+        source.javaDoc(note(model));
+        source.beginBlock("public " + (isNested(model) ? "static " : "") + "class " + concreteBuilderName + " extends " +
+                model.getAbstractBuilderName() + "<" + className + ", " + concreteBuilderName + ">");
+
+        if (model.isReusable()) {
+            //one builder per thread, reset on each use
+            source.emptyLine();
+            source.line("private static final " + ThreadLocal.class.getCanonicalName() + "<" + concreteBuilderName +
+                    "> " + LOCAL_BUILDERS + " = " + ThreadLocal.class.getCanonicalName() + ".withInitial(" +
+                    concreteBuilderName + "::new);");
+        }
+
+        //a reusable builder creates the object only once it is needed, so that resetting it allocates nothing
+        boolean lazy = model.isReusable() && ! model.isConstructorMode();
+        if (! model.isConstructorMode()) {
+            source.emptyLine();
+            source.line("private " + className + " " + createdObjectAttributeName +
+                    (lazy ? "" : " = " + _new(className)) + ";");
+        }
+
+        if (model.isReusable()) {
+            source.emptyLine();
+            source.beginMethod("public static " + concreteBuilderName + " " + LOCAL + "()")
+                    .line(statement(_return(LOCAL_BUILDERS + ".get()." + RESET + "()")))
+                    .endBlock();
+
+            source.emptyLine();
+            source.beginMethod("public " + concreteBuilderName + " " + RESET + "()");
+            if (model.isConstructorMode()) {
+                for (AttributeModel attribute : model.getAllAttributes()) {
+                    source.line(_this() + "." + attribute.getName() + " = " + defaultValue(attribute) + ";");
+                    if (isOwnCollection(model, attribute)) {
+                        source.line(_this() + "." + attribute.getName() + SHARED + " = false;");
+                    }
+                }
+            } else {
+                source.line(createdObjectAttributeName + " = null;");
+            }
+            for (AttributeModel attribute : model.getAllAttributes()) {
+                if (attribute.isArray()) {
+                    source.line(_this() + "." + attribute.getName() + BUFFER + " = null;");
+                }
+            }
+            if (model.isTrackChanges()) {
+                for (int word = 0; word < words(model.getAllAttributes().size()); word++) {
+                    source.line(_this() + "." + CHANGES + word + " = 0;");
+                }
+            }
+            source.line(statement(_return(_this())))
+                    .endBlock();
+
+            source.emptyLine();
+            source.beginMethod("public " + className + " " + BUILD_AND_RESET + "()")
+                    .line(className + " " + BUILT + " = " + BUILD + "();")
+                    .line(RESET + "();")
+                    .line(statement(_return(BUILT)))
+                    .endBlock();
+        }
+
+        source.emptyLine();
+        source.line("@Override");
+        source.beginMethod("public " + className + " " + BUILD + "()");
+        if (hasArrays(model.getAllAttributes())) {
+            source.line(FILL_ARRAYS + "();");
+        }
+        String created = model.isConstructorMode() ?
+                "new " + className + "(" + String.join(", ", model.getConstructorArguments()) + ")" :
+                (lazy ? GET_OBJ__ : createdObjectAttributeName);
+        if (model.getAllAttributes().stream().anyMatch(attribute -> isOwnCollection(model, attribute))) {
+            //from now on, the collections belong to the built object
+            source.line(className + " " + BUILT + " = " + created + ";");
+            for (AttributeModel attribute : model.getAllAttributes()) {
+                if (isOwnCollection(model, attribute)) {
+                    source.line(_this() + "." + attribute.getName() + SHARED + " = true;");
+                }
+            }
+            created = BUILT;
+        }
+        source.line(statement(_return(created)))
+                .endBlock();
+
+        source.emptyLine();
+        source.line("@Override");
+        source.beginMethod("public " + concreteBuilderName + " " + GET_THIS_BUILDER + "()")
+                .line(statement(_return(_this())))
+                .endBlock();
+
+        if (! model.isConstructorMode()) {
+            source.emptyLine();
+            source.line("@Override");
+            source.beginMethod("public " + className + " " + GET_OBJ + "()");
+            if (lazy) {
+                source.beginBlock("if (" + createdObjectAttributeName + " == null)")
+                        .line(createdObjectAttributeName + " = " + _new(className) + ";")
+                        .endBlock();
+            }
+            source.line(statement(_return(createdObjectAttributeName)))
+                    .endBlock();
+        }
+
+        source.endBlock();
+    }
+
+    private void generateArrayMethods(BuilderModel model, AttributeModel attribute, JavaSourceWriter source)
+            throws IOException {
+        String name = attribute.getName();
+        String buffer = _this() + "." + name + BUFFER;
+        String bufferSize = _this() + "." + name + BUFFER_SIZE;
+        String grow = GROW + capitalize(name);
+
+        source.emptyLine();
+        source.beginMethod("public B " + ADD_TO + capitalize(name) + "(" + attribute.getElementType() + " " +
+                name + ELEMENT + ")")
+                .line(grow + "(1);")
+                .line(buffer + "[" + bufferSize + "++] = " + name + ELEMENT + ";");
+        writeChanged(model, attribute, source);
+        source.line(statement(_return(GET_THIS_BUILDER__)))
+                .endBlock();
+
+        source.emptyLine();
+        source.beginMethod("public B " + ADD_ALL_TO + capitalize(name) + "(" + attribute.getElementType() + "... " +
+                name + ")")
+                .line(grow + "(" + name + ".length);")
+                .line(System.class.getCanonicalName() + ".arraycopy(" + name + ", 0, " + buffer + ", " + bufferSize +
+                        ", " + name + ".length);")
+                .line(bufferSize + " += " + name + ".length;");
+        writeChanged(model, attribute, source);
+        source.line(statement(_return(GET_THIS_BUILDER__)))
+                .endBlock();
+
+        //the buffer starts with the current elements, if any, and grows at least twice as large as needed
+        String current = value(model, attribute);
+        String max = Math.class.getCanonicalName() + ".max";
+        source.emptyLine();
+        source.beginMethod("private void " + grow + "(int additional)");
+        source.beginBlock("if (" + buffer + " == null)")
+                .line(bufferSize + " = (" + _notNull(current) + ") ? " + current + ".length : 0;")
+                .line(buffer + " = " + newArray(attribute.getImplementationType(), max + "(" + bufferSize +
+                        " + additional, " + ((attribute.getExpectedSize() > 0) ? attribute.getExpectedSize() :
+                        DEFAULT_ARRAY_CAPACITY) + ")") + ";")
+                .beginBlock("if (" + bufferSize + " > 0)")
+                .line(System.class.getCanonicalName() + ".arraycopy(" + current + ", 0, " + buffer + ", 0, " +
+                        bufferSize + ");")
+                .endBlock();
+        source.endBlock();
+        source.beginBlock("if (" + bufferSize + " + additional > " + buffer + ".length)")
+                .line(buffer + " = " + Arrays.class.getCanonicalName() + ".copyOf(" + buffer + ", " + max + "(" +
+                        bufferSize + " + additional, 2 * " + buffer + ".length));")
+                .endBlock();
+        source.endBlock();
+    }
+
+    private void generateFillArrays(BuilderModel model, JavaSourceWriter source) throws IOException {
+        boolean inherited = hasArrays(model.getInheritedAttributes());
+
+        //assigns the elements collected so far, trimmed to size, to the arrays of the object being built
+        source.emptyLine();
+        if (inherited) {
+            source.line("@Override");
+        }
+        source.beginMethod("protected void " + FILL_ARRAYS + "()");
+        if (inherited) {
+            source.line(_super() + "." + FILL_ARRAYS + "();");
+        }
+        for (AttributeModel attribute : model.getAttributes()) {
+            if (attribute.isArray()) {
+                String buffer = _this() + "." + attribute.getName() + BUFFER;
+                source.beginBlock("if (" + _notNull(buffer) + ")")
+                        .line(assign(model, attribute, Arrays.class.getCanonicalName() + ".copyOf(" + buffer + ", " +
+                                _this() + "." + attribute.getName() + BUFFER_SIZE + ")"))
+                        .endBlock();
+            }
+        }
+        source.endBlock();
+    }
+
+    private void generateApplyTo(BuilderModel model, JavaSourceWriter source) throws IOException {
+        //copies only the attributes given to the builder, the inherited ones by the parent builder
+        source.emptyLine();
+        if (model.hasParent()) {
+            source.line("@Override");
+        }
+        source.beginMethod("public T " + APPLY_TO + "(T " + EXISTING + ")");
+        if (model.hasParent()) {
+            source.line(_super() + "." + APPLY_TO + "(" + EXISTING + ");");
+        }
+        for (AttributeModel attribute : model.getAttributes()) {
+            if (! isTracked(model, attribute)) {
+                continue;
+            }
+
+            String value = value(model, attribute);
+            if (attribute.isArray()) {
+                //the elements added so far are only assigned to the object being built on build
+                String buffer = _this() + "." + attribute.getName() + BUFFER;
+                value = "(" + _notNull(buffer) + ") ? " + Arrays.class.getCanonicalName() + ".copyOf(" + buffer + ", " +
+                        _this() + "." + attribute.getName() + BUFFER_SIZE + ") : " + value;
+            }
+            source.beginBlock("if (" + isChanged(model, attribute) + ")")
+                    .line(EXISTING + "." + attribute.getSetter() + "(" + value + ");")
+                    .endBlock();
+        }
+        source.line(statement(_return(EXISTING)));
+        source.endBlock();
+    }
+
+    private void generateChangedFields(BuilderModel model, JavaSourceWriter source) throws IOException {
+        String fieldNames = Set.class.getCanonicalName() + "<" + String.class.getCanonicalName() + ">";
+
+        //the names of the attributes given to the builder, the inherited ones first
+        source.emptyLine();
+        if (model.hasParent()) {
+            source.line("@Override");
+        }
+        source.beginMethod("public " + fieldNames + " " + CHANGED_FIELDS + "()");
+        source.line(fieldNames + " " + FIELDS + " = " + (model.hasParent() ? _super() + "." + CHANGED_FIELDS + "()" :
+                "new " + LinkedHashSet.class.getCanonicalName() + "<>()") + ";");
+        for (AttributeModel attribute : model.getAttributes()) {
+            if (! isTracked(model, attribute)) {
+                continue;
+            }
+
+            source.beginBlock("if (" + isChanged(model, attribute) + ")")
+                    .line(FIELDS + ".add(\"" + attribute.getName() + "\");")
+                    .endBlock();
+        }
+        source.line(statement(_return(FIELDS)));
+        source.endBlock();
+    }
+
+    /**
+     * Writes the statement marking the attribute as given to the builder, if the changes are tracked.
+     */
+    private void writeChanged(BuilderModel model, AttributeModel attribute, JavaSourceWriter source) throws IOException {
+        if (isTracked(model, attribute)) {
+            int index = model.getAllAttributes().indexOf(attribute);
+            source.line(_this() + "." + CHANGES + (index / Long.SIZE) + " |= " + bit(index) + ";");
+        }
+    }
+
+    /**
+     * @return the condition whether the attribute has been given to the builder
+     */
+    private String isChanged(BuilderModel model, AttributeModel attribute) {
+        int index = model.getAllAttributes().indexOf(attribute);
+        return "(" + _this() + "." + CHANGES + (index / Long.SIZE) + " & " + bit(index) + ") != 0";
+    }
+
+    /**
+     * @return whether the changes of the attribute are tracked; not for those without a getter, which cannot be
+     * applied to another object
+     */
+    private static boolean isTracked(BuilderModel model, AttributeModel attribute) {
+        return model.isTrackChanges() && (attribute.getGetter() != null);
+    }
+
+    private static String bit(int index) {
+        return "0x" + Long.toHexString(1L << (index % Long.SIZE)) + "L";
+    }
+
+    /**
+     * @return the number of the words needed for the bits of the given number of attributes
+     */
+    private static int words(int attributes) {
+        return (attributes + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * @return whether the attribute is a collection kept (and possibly created) by the builder itself until build
+     */
+    private static boolean isOwnCollection(BuilderModel model, AttributeModel attribute) {
+        return model.isConstructorMode() && attribute.isCollection() && (attribute.getImplementationType() != null);
+    }
+
+    private static boolean hasArrays(List<AttributeModel> attributes) {
+        return attributes.stream().anyMatch(AttributeModel::isArray);
+    }
+
+    /**
+     * @return expression creating an array of the given (erased) element type, e.g. {@code new int[size][]} for
+     * {@code int[]}
+     */
+    private static String newArray(String elementType, String size) {
+        int dimensions = elementType.indexOf('[');
+        return (dimensions < 0) ? "new " + elementType + "[" + size + "]" :
+                "new " + elementType.substring(0, dimensions) + "[" + size + "]" + elementType.substring(dimensions);
+    }
+
+    /**
+     * Writes the statement setting the attribute to the given value, replacing also any elements added so far.
+     */
+    private void writeAssign(BuilderModel model, AttributeModel attribute, String value, JavaSourceWriter source)
+            throws IOException {
+        source.line(assign(model, attribute, value));
+        if (isOwnCollection(model, attribute)) {
+            //given by the caller or taken from another object, so not to be changed in place
+            source.line(_this() + "." + attribute.getName() + SHARED + " = true;");
+        }
+        if (attribute.isArray()) {
+            source.line(_this() + "." + attribute.getName() + BUFFER + " = null;");
+        }
+        writeChanged(model, attribute, source);
+    }
+
+    /**
+     * @return the statement setting the attribute to the given value, on the object or in the builder itself
+     */
+    private String assign(BuilderModel model, AttributeModel attribute, String value) {
+        return model.isConstructorMode() ? _this() + "." + attribute.getName() + " = " + value + ";" :
+                GET_OBJ__ + "." + attribute.getSetter() + "(" + value + ");";
+    }
+
+    /**
+     * @return the expression for the current value of the attribute, on the object or in the builder itself
+     */
+    private String value(BuilderModel model, AttributeModel attribute) {
+        return model.isConstructorMode() ? _this() + "." + attribute.getName() : GET_OBJ__ + "." + attribute.getGetter() + "()";
+    }
+
+    private void createCollection(BuilderModel model, AttributeModel attribute, JavaSourceWriter source,
+                                  String capacity) throws IOException {
+        if (isOwnCollection(model, attribute)) {
+            //the collection passed to the constructor of a built object (or given to the builder) must not change
+            String shared = _this() + "." + attribute.getName() + SHARED;
+            String current = value(model, attribute);
+            String implementation = attribute.getImplementationType();
+            source.beginBlock("if (" + shared + ")")
+                    .line(shared + " = false;");
+            source.beginBlock("if (" + _notNull(current) + ")");
+            if (COPYABLE_COLLECTIONS.contains(implementation.replace("<>", ""))) {
+                source.line(current + " = new " + implementation + "(" + current + ");");
+            } else {
+                source.line(attribute.getType() + " " + COPY + " = new " + implementation + "();")
+                        .line(COPY + "." + _addAll(current))
+                        .line(current + " = " + COPY + ";");
+            }
+            source.endBlock();
+            source.endBlock();
+        }
+        if (attribute.getImplementationType() != null) {
+            source.beginBlock("if (" + value(model, attribute) + " == null)")
+                    .line(assign(model, attribute, "new " + attribute.getImplementationType() + "(" +
+                            ((capacity != null) ? capacity : "") + ")"))
+                    .endBlock();
+        }
+    }
+
+    /**
+     * @param size expression for the number of elements to be added at once, {@code null} if not known
+     * @return expression for the initial capacity of the collection of the attribute so that it does not need to grow
+     * while adding the expected (and/or the given) number of elements, {@code null} if not known or not supported
+     */
+    private static String capacity(AttributeModel attribute, String size) {
+        if (attribute.getImplementationType() == null) {
+            //e.g. an EnumSet, or an interface with no known implementation; set as a whole
+            return null;
+        }
+
+        String implementation = attribute.getImplementationType().replace("<>", "");
+        boolean hashed = HASHED_COLLECTIONS.contains(implementation);
+        if (! hashed && ! SIZED_COLLECTIONS.contains(implementation)) {
+            return null;
+        }
+
+        //hash-based collections grow once they are filled up to their load factor
+        String expected = (attribute.getExpectedSize() <= 0) ? null : String.valueOf(hashed ?
+                (int) (attribute.getExpectedSize() / DEFAULT_LOAD_FACTOR) + 1 : attribute.getExpectedSize());
+        String given = (size == null) ? null : (hashed ? "(int) (" + size + " / " + DEFAULT_LOAD_FACTOR + "f) + 1" : size);
+
+        if ((expected != null) && (given != null)) {
+            return Math.class.getCanonicalName() + ".max(" + expected + ", " + given + ")";
+        }
+        return (expected != null) ? expected : given;
+    }
+
+    private static String defaultValue(AttributeModel attribute) {
+        if (! attribute.isPrimitive()) {
+            return "null";
+        }
+        return attribute.getType().equals("boolean") ? "false" : "0";
+    }
+
+    private boolean isNested(BuilderModel model) {
+        return model.getOutput() == GenerateBuilder.Output.NESTED;
+    }
+
+    private String[] note(BuilderModel model) {
+        return isNested(model) ? NOTE_GENERATED_CODE :
+                new String[] {NOTE_GENERATED_SOURCE[0], String.format(NOTE_GENERATED_SOURCE[1], model.getSimpleName())};
+    }
+
+    private String qualified(BuilderModel model, String simpleName) {
+        return model.getPackageName().isEmpty() ? simpleName : model.getPackageName() + "." + simpleName;
+    }
+
+    private void packageDeclaration(JavaSourceWriter source, String packageName) throws IOException {
+        if (! packageName.isEmpty()) {
+            source.line("package " + packageName + ";");
+            source.emptyLine();
+        }
+    }
+
+    private static String statement(String code) {
+        //the helpers in JavaElements end the statements with a line separator; the writer takes care of that
+        return code.trim();
+    }
+
+}
@@ -0,0 +1,166 @@
+package me.deadcode.adka.buildergen;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.SourcePositions;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import org.jboss.forge.roaster.Roaster;
+import org.jboss.forge.roaster._shade.org.eclipse.jdt.core.dom.ASTNode;
+import org.jboss.forge.roaster._shade.org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.jboss.forge.roaster._shade.org.eclipse.jdt.core.dom.CompilationUnit;
+import org.jboss.forge.roaster.model.source.JavaClassSource;
+
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The source file of an annotated class whose builders are nested in it, together with the positions of the
+ * previously generated builders (to be replaced) and of the end of the class (where the builders are inserted).
+ */
+public class ClassSource {
+
+    private final File file;
+    private final Charset charset;
+    private final String content;
+    private final List<int[]> existingBuilders;
+    private final int closingBrace;
+
+    private ClassSource(File file, Charset charset, String content, List<int[]> existingBuilders, int closingBrace) {
+        this.file = file;
+        this.charset = charset;
+        this.content = content;
+        this.existingBuilders = existingBuilders;
+        this.closingBrace = closingBrace;
+    }
+
+    /**
+     * Locates the class in the source already parsed by the compiler.
+     */
+    public static ClassSource fromCompiler(Trees trees, TypeElement classs, String... builderNames) throws IOException {
+        TreePath path = trees.getPath(classs);
+        CompilationUnitTree compilationUnit = path.getCompilationUnit();
+        ClassTree classTree = (ClassTree) path.getLeaf();
+        SourcePositions positions = trees.getSourcePositions();
+
+        JavaFileObject sourceFile = compilationUnit.getSourceFile();
+        String content = sourceFile.getCharContent(true).toString();
+
+        List<int[]> existingBuilders = new ArrayList<>();
+        Collection<String> names = Arrays.asList(builderNames);
+        for (Tree member : classTree.getMembers()) {
+            if ((member instanceof ClassTree) && names.contains(((ClassTree) member).getSimpleName().toString())) {
+                existingBuilders.add(new int[] {(int) positions.getStartPosition(compilationUnit, member),
+                        (int) positions.getEndPosition(compilationUnit, member)});
+            }
+        }
+
+        int classEnd = (int) positions.getEndPosition(compilationUnit, classTree);
+        return new ClassSource(new File(sourceFile.toUri()), charsetOf(sourceFile), content, existingBuilders,
+                content.lastIndexOf('}', classEnd - 1));
+    }
+
+    /**
+     * @return the charset the compiler reads the source with (i.e. its {@code -encoding}), so that the source can be
+     * written back the same way
+     */
+    private static Charset charsetOf(JavaFileObject sourceFile) throws IOException {
+        //not exposed otherwise; the reader of javac tells it
+        try (Reader reader = sourceFile.openReader(true)) {
+            if (reader instanceof InputStreamReader) {
+                return Charset.forName(((InputStreamReader) reader).getEncoding());
+            }
+        } catch (IllegalArgumentException e) {
+            //an unknown name; unlikely for a charset just used for reading
+        }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * Fallback for compilers not providing their syntax trees: the class is looked up in the given source file and
+     * parsed again.
+     */
+    public static ClassSource fromFile(File file, String... builderNames) throws IOException {
+        String content = new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset());
+        JavaClassSource javaClass = Roaster.parse(JavaClassSource.class, content);
+
+        CompilationUnit compilationUnit = (CompilationUnit) javaClass.getInternal();
+        AbstractTypeDeclaration classDeclaration = null;
+        for (Object type : compilationUnit.types()) {
+            if (((AbstractTypeDeclaration) type).getName().getIdentifier().equals(javaClass.getName())) {
+                classDeclaration = (AbstractTypeDeclaration) type;
+            }
+        }
+        if (classDeclaration == null) {
+            throw new IOException("Class " + javaClass.getName() + " not found in " + file);
+        }
+
+        List<int[]> existingBuilders = new ArrayList<>();
+        Collection<String> names = Arrays.asList(builderNames);
+        for (Object member : classDeclaration.bodyDeclarations()) {
+            if ((member instanceof AbstractTypeDeclaration) &&
+                    names.contains(((AbstractTypeDeclaration) member).getName().getIdentifier())) {
+                ASTNode builder = (ASTNode) member;
+                existingBuilders.add(new int[] {builder.getStartPosition(), builder.getStartPosition() + builder.getLength()});
+            }
+        }
+
+        return new ClassSource(file, Charset.defaultCharset(), content, existingBuilders,
+                content.lastIndexOf('}', classDeclaration.getStartPosition() + classDeclaration.getLength() - 1));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the charset of the source file
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * @param builders the source of the builders, ending with a line separator
+     * @return the content of the source file, with the previously generated builders (if any) replaced by the given ones
+     */
+    public String withBuilders(String builders) {
+        StringBuilder result = new StringBuilder();
+        int position = 0;
+        for (int[] builder : existingBuilders) {
+            //remove also the preceding JavaDoc and the empty lines before it
+            int start = builder[0];
+            int commentStart = content.lastIndexOf("/**", start);
+            if ((commentStart >= 0) && content.substring(commentStart, start).trim().endsWith("*/")) {
+                start = commentStart;
+            }
+            while ((start > position) && Character.isWhitespace(content.charAt(start - 1))) {
+                start--;
+            }
+
+            result.append(content, position, start);
+            position = builder[1];
+        }
+
+        result.append(content, position, closingBrace);
+        result.append(System.lineSeparator()).append(builders);
+        result.append(content, closingBrace, content.length());
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,90 @@
+package me.deadcode.adka.buildergen;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * Persistent cache of content hashes of the processed classes, keyed by the fully qualified class name.
+ *
+ * For each class, the hash of the last input source and the hash of the output generated from it are stored, so that
+ * a class whose source is either unchanged or exactly what was written on the previous build can be skipped.
+ */
+public class GeneratedSourceCache {
+
+    private static final String SEPARATOR = ":";
+    private static final String HASH_ALGORITHM = "SHA-1";
+
+    private final File cacheFile;
+    private final Properties entries = new Properties();
+    private boolean modified = false;
+
+    public GeneratedSourceCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    public void load() throws IOException {
+        if (cacheFile.isFile()) {
+            try (InputStream is = new BufferedInputStream(new FileInputStream(cacheFile))) {
+                entries.load(is);
+            }
+        }
+    }
+
+    public void save() throws IOException {
+        if (! modified) {
+            return;
+        }
+
+        File parent = cacheFile.getAbsoluteFile().getParentFile();
+        if ((parent != null) && ! parent.isDirectory() && ! parent.mkdirs()) {
+            throw new IOException("Unable to create the cache directory '" + parent + "'");
+        }
+
+        try (OutputStream os = new BufferedOutputStream(new FileOutputStream(cacheFile))) {
+            entries.store(os, "BuilderGenerator cache: <class>=<input hash>:<output hash>");
+        }
+        modified = false;
+    }
+
+    public boolean isUpToDate(String className, String sourceHash) {
+        String entry = entries.getProperty(className);
+        if (entry == null) {
+            return false;
+        }
+
+        //either nothing changed since the last build, or the source is exactly what was generated last time
+        String[] hashes = entry.split(SEPARATOR);
+        return (hashes.length == 2) && (hashes[0].equals(sourceHash) || hashes[1].equals(sourceHash));
+    }
+
+    public void update(String className, String inputHash, String outputHash) {
+        String entry = inputHash + SEPARATOR + outputHash;
+        if (! entry.equals(entries.getProperty(className))) {
+            entries.setProperty(className, entry);
+            modified = true;
+        }
+    }
+
+    public static String hash(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            for (String part : parts) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            //every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -1,8 +1,5 @@
 package me.deadcode.adka.buildergen;
 
-import org.jboss.forge.roaster.model.source.FieldSource;
-import org.jboss.forge.roaster.model.source.JavaClassSource;
-
 public class JavaElements {
 
     private static final String END_COMMAND = ";" + System.lineSeparator();
@@ -39,11 +36,6 @@ public class JavaElements {
         return "get" + capitalize(object) + "()";
     }
 
-    public static String _get(FieldSource<JavaClassSource> attribute) {
-        return (attribute.getType().getSimpleName().toLowerCase().equals("boolean") ? "is" : "get") +
-                capitalize(attribute.getName()) + "()";
-    }
-
     public static String _set(String object) {
         return _set(object, object);
     }
@@ -72,6 +64,10 @@ public class JavaElements {
     }
 
 
+    public static String decapitalize(String className) {
+        return className.substring(0,1).toLowerCase() + (className.length() == 1 ? "" : className.substring(1));
+    }
+
     public static String capitalize(String attributeName) {
         return attributeName.substring(0,1).toUpperCase() + (attributeName.length() == 1 ? "" : attributeName.substring(1));
     }
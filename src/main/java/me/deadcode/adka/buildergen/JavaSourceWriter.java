@@ -0,0 +1,82 @@
+package me.deadcode.adka.buildergen;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes Java source code line by line straight to the underlying writer, keeping track of the indentation of blocks.
+ */
+public class JavaSourceWriter {
+
+    private static final String INDENTATION = "    ";
+
+    private final Writer writer;
+    private int level;
+    private int methods;
+
+    public JavaSourceWriter(Writer writer) {
+        this(writer, 0);
+    }
+
+    /**
+     * @param level the initial indentation level, e.g. 1 for members of a top-level class
+     */
+    public JavaSourceWriter(Writer writer, int level) {
+        this.writer = writer;
+        this.level = level;
+    }
+
+    public JavaSourceWriter line(String line) throws IOException {
+        for (int i = 0; i < level; i++) {
+            writer.write(INDENTATION);
+        }
+        writer.write(line);
+        writer.write(System.lineSeparator());
+        return this;
+    }
+
+    public JavaSourceWriter emptyLine() throws IOException {
+        writer.write(System.lineSeparator());
+        return this;
+    }
+
+    public JavaSourceWriter beginBlock(String header) throws IOException {
+        line(header + " {");
+        level++;
+        return this;
+    }
+
+    /**
+     * Begins a block of a method, counting the methods written.
+     */
+    public JavaSourceWriter beginMethod(String header) throws IOException {
+        methods++;
+        return beginBlock(header);
+    }
+
+    public JavaSourceWriter abstractMethod(String declaration) throws IOException {
+        methods++;
+        return line(declaration + ";");
+    }
+
+    public JavaSourceWriter endBlock() throws IOException {
+        level--;
+        return line("}");
+    }
+
+    public JavaSourceWriter javaDoc(String... lines) throws IOException {
+        line("/**");
+        for (String text : lines) {
+            line(" * " + text);
+        }
+        return line(" */");
+    }
+
+    /**
+     * @return the number of methods written so far
+     */
+    public int getMethods() {
+        return methods;
+    }
+
+}
@@ -0,0 +1,158 @@
+package me.deadcode.adka.buildergen;
+
+import me.deadcode.adka.buildergen.annotation.GenerateBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings of the phases of generating the builders, per class and in total, and counts of what has been generated
+ * and what has been skipped. The statistics of a class are only ever updated by one thread at a time; everything else
+ * must be updated on the processing thread only.
+ */
+public class ProcessingStats {
+
+    public enum Phase {
+        /** creating the model of the class from the compiler's model */
+        MODEL,
+        /** reading the source of a class with nested builders and locating the previous builders in it */
+        LOCATE,
+        /** generating the source of the builders; for separate builders, including writing them */
+        GENERATE,
+        /** formatting the nested builders */
+        FORMAT,
+        /** writing the class with the nested builders */
+        WRITE
+    }
+
+    private final List<ClassStats> classes = new ArrayList<>();
+    private long wallNanos;
+
+    int skippedStaticFields;
+    int skippedFinalFields;
+    int skippedFieldsWithoutSetter;
+    int ignoredNestedClasses;
+    int ignoredEnums;
+
+    public ClassStats forClass(String className, GenerateBuilder.Output output) {
+        ClassStats classStats = new ClassStats(className, output);
+        classes.add(classStats);
+        return classStats;
+    }
+
+    public void addWallTime(long nanos) {
+        wallNanos += nanos;
+    }
+
+    /**
+     * @return the time spent in the given phase by all the classes, summed over all the threads
+     */
+    public long getNanos(Phase phase) {
+        return classes.stream().mapToLong(classStats -> classStats.nanos[phase.ordinal()]).sum();
+    }
+
+    public String summary() {
+        long upToDate = classes.stream().filter(classStats -> classStats.upToDate).count();
+        StringBuilder summary = new StringBuilder("BuilderGenerator: ").append(classes.size()).append(" classes (")
+                .append(upToDate).append(" up to date) in ").append(millis(wallNanos)).append(" ms:");
+        for (Phase phase : Phase.values()) {
+            summary.append(' ').append(phase.name().toLowerCase()).append(' ').append(millis(getNanos(phase)))
+                    .append(" ms").append((phase.ordinal() < Phase.values().length - 1) ? "," : ";");
+        }
+        return summary.append(' ').append(classes.stream().mapToInt(classStats -> classStats.methods).sum())
+                .append(" methods generated").toString();
+    }
+
+    public void writeJson(File file) throws IOException {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"classes\": ").append(classes.size()).append(",\n");
+        json.append("  \"upToDate\": ").append(classes.stream().filter(classStats -> classStats.upToDate).count())
+                .append(",\n");
+        json.append("  \"written\": ").append(classes.stream().filter(classStats -> classStats.written).count())
+                .append(",\n");
+        json.append("  \"generatedMethods\": ").append(classes.stream().mapToInt(classStats -> classStats.methods).sum())
+                .append(",\n");
+        json.append("  \"skippedStaticFields\": ").append(skippedStaticFields).append(",\n");
+        json.append("  \"skippedFinalFields\": ").append(skippedFinalFields).append(",\n");
+        json.append("  \"skippedFieldsWithoutSetter\": ").append(skippedFieldsWithoutSetter).append(",\n");
+        json.append("  \"ignoredNestedClasses\": ").append(ignoredNestedClasses).append(",\n");
+        json.append("  \"ignoredEnums\": ").append(ignoredEnums).append(",\n");
+        json.append("  \"wallTimeMs\": ").append(millis(wallNanos)).append(",\n");
+        //summed over all the threads, so they may add up to more than the wall time
+        json.append("  \"phaseTimesMs\": ").append(phases(phase -> getNanos(phase))).append(",\n");
+
+        json.append("  \"perClass\": [");
+        for (int i = 0; i < classes.size(); i++) {
+            ClassStats classStats = classes.get(i);
+            json.append((i == 0) ? "\n" : ",\n");
+            json.append("    {\"class\": ").append(quote(classStats.className))
+                    .append(", \"output\": ").append(quote(classStats.output.name().toLowerCase()))
+                    .append(", \"upToDate\": ").append(classStats.upToDate)
+                    .append(", \"written\": ").append(classStats.written)
+                    .append(", \"methods\": ").append(classStats.methods)
+                    .append(", \"phaseTimesMs\": ").append(phases(phase -> classStats.nanos[phase.ordinal()]))
+                    .append('}');
+        }
+        json.append(classes.isEmpty() ? "]\n" : "\n  ]\n").append("}\n");
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        Files.write(file.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String phases(java.util.function.ToLongFunction<Phase> nanos) {
+        StringJoiner phases = new StringJoiner(", ", "{", "}");
+        for (Phase phase : Phase.values()) {
+            phases.add(quote(phase.name().toLowerCase()) + ": " + millis(nanos.applyAsLong(phase)));
+        }
+        return phases.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    /**
+     * The statistics of a single annotated class.
+     */
+    public static class ClassStats {
+        private final String className;
+        private final GenerateBuilder.Output output;
+        private final long[] nanos = new long[Phase.values().length];
+        private int methods;
+        private boolean upToDate;
+        private boolean written;
+
+        private ClassStats(String className, GenerateBuilder.Output output) {
+            this.className = className;
+            this.output = output;
+        }
+
+        public void addTime(Phase phase, long startNanos) {
+            nanos[phase.ordinal()] += System.nanoTime() - startNanos;
+        }
+
+        public void addMethods(int methods) {
+            this.methods += methods;
+        }
+
+        public void upToDate() {
+            upToDate = true;
+        }
+
+        public void written() {
+            written = true;
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package me.deadcode.adka.buildergen;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import java.util.*;
+
+/**
+ * Answers questions about the types of attributes using the compiler's model only, i.e. without loading any classes.
+ * The answers are cached by the type name for the whole compilation. Must be used on the processing thread only.
+ */
+public class TypeResolver {
+
+    private final Types types;
+    private final TypeMirror collectionType;
+
+    //the implementations instantiated for the standard collection interfaces
+    private static final Map<String, String> IMPLEMENTATIONS = new HashMap<>();
+    static {
+        IMPLEMENTATIONS.put(Collection.class.getCanonicalName(), ArrayList.class.getCanonicalName());
+        IMPLEMENTATIONS.put(List.class.getCanonicalName(), ArrayList.class.getCanonicalName());
+        IMPLEMENTATIONS.put(Set.class.getCanonicalName(), HashSet.class.getCanonicalName());
+        IMPLEMENTATIONS.put(SortedSet.class.getCanonicalName(), TreeSet.class.getCanonicalName());
+        IMPLEMENTATIONS.put(NavigableSet.class.getCanonicalName(), TreeSet.class.getCanonicalName());
+        IMPLEMENTATIONS.put(Queue.class.getCanonicalName(), ArrayDeque.class.getCanonicalName());
+        IMPLEMENTATIONS.put(Deque.class.getCanonicalName(), ArrayDeque.class.getCanonicalName());
+    }
+
+    private final Map<String, Boolean> isCollection = new HashMap<>();
+    private final Map<String, String> elementTypes = new HashMap<>();
+    private final Map<String, Optional<String>> implementations = new HashMap<>();
+
+    public TypeResolver(ProcessingEnvironment processingEnv) {
+        this.types = processingEnv.getTypeUtils();
+        this.collectionType = types.erasure(processingEnv.getElementUtils()
+                .getTypeElement(Collection.class.getCanonicalName()).asType());
+    }
+
+    /**
+     * @return true if the type is a {@link Collection} or any of its subtypes, including user-defined ones
+     */
+    public boolean isCollection(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+
+        return isCollection.computeIfAbsent(types.erasure(type).toString(),
+                name -> types.isAssignable(types.erasure(type), collectionType));
+    }
+
+    /**
+     * @return the type of the elements of the given collection type, as it should appear in the generated code;
+     * resolved also through the supertypes, e.g. {@code Integer} for {@code class Grades extends ArrayList<Integer>}
+     */
+    public String getElementType(TypeMirror type) {
+        return elementTypes.computeIfAbsent(type.toString(), name -> {
+            TypeMirror elementType = findElementType(type, new HashSet<>());
+            if (elementType == null) {
+                return Object.class.getCanonicalName();
+            }
+
+            //a wildcard cannot be used as a parameter type; use its bound instead
+            if (elementType.getKind() == TypeKind.WILDCARD) {
+                WildcardType wildcard = (WildcardType) elementType;
+                return (wildcard.getExtendsBound() != null) ? wildcard.getExtendsBound().toString() :
+                        Object.class.getCanonicalName();
+            }
+            return elementType.toString();
+        });
+    }
+
+    /**
+     * @return the class to instantiate for the given collection type, as it should appear after {@code new} (with
+     * the diamond operator if the class is generic), e.g. {@code java.util.ArrayList<>} for {@code List<String>};
+     * {@code null} if not known (e.g. for abstract classes)
+     */
+    public String getImplementationType(TypeMirror type) {
+        return implementations.computeIfAbsent(types.erasure(type).toString(), name -> {
+            TypeElement element = (TypeElement) types.asElement(type);
+            if (IMPLEMENTATIONS.containsKey(name)) {
+                return Optional.of(IMPLEMENTATIONS.get(name) + "<>");
+            }
+
+            //the declared class itself, if it can be instantiated
+            if ((element.getKind() != ElementKind.CLASS) || element.getModifiers().contains(Modifier.ABSTRACT) ||
+                    ElementFilter.constructorsIn(element.getEnclosedElements()).stream().noneMatch(constructor ->
+                            constructor.getParameters().isEmpty() && constructor.getModifiers().contains(Modifier.PUBLIC))) {
+                return Optional.empty();
+            }
+            return Optional.of(name + (element.getTypeParameters().isEmpty() ? "" : "<>"));
+        }).orElse(null);
+    }
+
+    private TypeMirror findElementType(TypeMirror type, Set<String> visited) {
+        if ((type.getKind() != TypeKind.DECLARED) || ! visited.add(type.toString())) {
+            return null;
+        }
+
+        if (types.isSameType(types.erasure(type), collectionType)) {
+            List<? extends TypeMirror> typeArguments = ((DeclaredType) type).getTypeArguments();
+            return typeArguments.isEmpty() ? null : typeArguments.get(0);
+        }
+
+        //the direct supertypes have the type arguments of this type substituted already
+        for (TypeMirror supertype : types.directSupertypes(type)) {
+            if (isCollection(supertype)) {
+                return findElementType(supertype, visited);
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,19 @@
+package me.deadcode.adka.buildergen.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the constructor to be called by the generated builder of a class annotated with
+ * {@code @GenerateBuilder(buildMode = GenerateBuilder.BuildMode.CONSTRUCTOR)}, in case there are several constructors
+ * taking all the attributes.
+ *
+ * The constructor must take all the attributes of the class, including those inherited from annotated superclasses,
+ * with the parameters named after the attributes (in any order).
+ */
+@Target(ElementType.CONSTRUCTOR)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface BuilderConstructor {
+}
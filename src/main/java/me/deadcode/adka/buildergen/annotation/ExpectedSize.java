@@ -0,0 +1,20 @@
+package me.deadcode.adka.buildergen.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The expected number of elements of a collection or an array attribute. The collection created by the generated
+ * {@code addToX} and {@code addAllToX} methods (if there is none yet), or the buffer of the builder collecting the
+ * elements of an array, is sized accordingly, so that it does not need to grow while the elements are being added.
+ * Overrides {@link GenerateBuilder#expectedSize()}.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ExpectedSize {
+
+    int value();
+
+}
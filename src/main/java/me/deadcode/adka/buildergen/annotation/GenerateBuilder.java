@@ -15,4 +15,79 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface GenerateBuilder {
 
+    /**
+     * Where the generated builders are placed. Unless set explicitly, the value of the {@code buildergen.output}
+     * processor option is used, and if that is not set either, the builders are nested in the annotated class.
+     */
+    Output output() default Output.DEFAULT;
+
+    /**
+     * Whether the builder can be reused for building any number of objects. If set, the concrete builder gets also
+     * {@code reset()} (starting over with a new object), {@code buildAndReset()} (returning the built object and
+     * starting over) and a static {@code local()} method returning a reset builder owned by the current thread.
+     * The {@code build()} method keeps returning the same object until the builder is reset; the next object is only
+     * created once the builder is used again.
+     *
+     * There is a single {@code local()} builder per class and thread: calling {@code local()} again (e.g. to build
+     * another object of the same class while the first one is still being built) resets the builder in use. Nested
+     * objects of the same class need their own builder.
+     */
+    boolean reusable() default false;
+
+    /**
+     * How the builder creates the object. All the annotated classes of a hierarchy must use the same mode.
+     */
+    BuildMode buildMode() default BuildMode.SETTERS;
+
+    /**
+     * The expected number of elements of the collection attributes of the class, unless set for an attribute by
+     * {@link ExpectedSize}. The collections created by the builder are sized accordingly; {@code 0} means unknown.
+     */
+    int expectedSize() default 0;
+
+    /**
+     * Whether the builder keeps track of the attributes given to it (by the setter-like methods, by adding elements
+     * or by {@code from}/{@code fromIgnoreNull}), so that only those can be copied to an existing object by
+     * {@code applyTo(existing)}; {@code changedFields()} returns their names. Only supported in the
+     * {@link BuildMode#SETTERS} mode; attributes without a getter are not tracked. All the annotated classes of a
+     * hierarchy must either track the changes or not.
+     */
+    boolean trackChanges() default false;
+
+    enum Output {
+        /**
+         * Use the value of the {@code buildergen.output} processor option.
+         */
+        DEFAULT,
+
+        /**
+         * The builders are generated as {@code public static} classes nested directly in the annotated class,
+         * i.e. the source file of the annotated class is rewritten.
+         */
+        NESTED,
+
+        /**
+         * The builders are generated as separate top-level classes in the package of the annotated class,
+         * among the generated sources of the compilation. The source file of the annotated class is left untouched.
+         */
+        SEPARATE
+    }
+
+    enum BuildMode {
+        /**
+         * The object is created by the no-args constructor, right away (or, if {@link #reusable()}, once the first
+         * value is given or on build), and the values are set by the setters of the attributes as soon as they are
+         * given to the builder. Attributes without a setter and final attributes are ignored; attributes without a
+         * getter can only be set as a whole and are not copied by the {@code from} methods.
+         */
+        SETTERS,
+
+        /**
+         * The values are kept in the builder until {@code build()}, which passes them all to the constructor taking
+         * all the attributes of the class, including those inherited from annotated superclasses (or to the one
+         * annotated with {@link BuilderConstructor}). The attributes may be final and need no setters.
+         */
+        CONSTRUCTOR
+    }
+
 }